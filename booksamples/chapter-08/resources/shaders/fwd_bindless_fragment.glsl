@@ -0,0 +1,18 @@
+#version 450
+
+// Must match BindlessTextureSet.MAX_TEXTURES
+#define MAX_TEXTURES 1024
+
+layout(location = 0) in vec2 textCoords;
+layout(location = 0) out vec4 uFragColor;
+
+layout(set = 1, binding = 0) uniform sampler2D textSamplers[MAX_TEXTURES];
+
+layout(set = 0, binding = 1) uniform MaterialUniform {
+    int textureIdx;
+} material;
+
+void main()
+{
+    uFragColor = texture(textSamplers[material.textureIdx], textCoords);
+}
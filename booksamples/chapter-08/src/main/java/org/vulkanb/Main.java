@@ -11,6 +11,7 @@ public class Main implements IAppLogic {
     private static final Logger LOGGER = LogManager.getLogger();
 
     private float angle = 0;
+    private AsyncModelLoader asyncModelLoader;
     private Entity cubeEntity;
     private Vector3f rotatingAngle = new Vector3f(1, 1, 1);
 
@@ -23,7 +24,7 @@ public class Main implements IAppLogic {
 
     @Override
     public void cleanup() {
-        // To be implemented
+        asyncModelLoader.cleanup();
     }
 
     @Override
@@ -38,10 +39,10 @@ public class Main implements IAppLogic {
 
     @Override
     public void init(Window window, Scene scene, Render render) {
+        asyncModelLoader = new AsyncModelLoader(EngineProperties.getInstance().getLoaderThreads());
         String meshId = "CubeMesh";
-        MeshData[] meshDataList = ModelLoader.loadMeshes(meshId, "resources/models/cube/cube.obj",
-                "resources/models/cube");
-        render.loadMeshes(meshDataList);
+        render.loadMeshes(asyncModelLoader.loadMeshes(meshId, "resources/models/cube/cube.obj",
+                "resources/models/cube"));
 
         cubeEntity = new Entity("CubeEntity", meshId, new Vector3f(0.0f, 0.0f, 0.0f));
         cubeEntity.setPosition(0, 0, -2);
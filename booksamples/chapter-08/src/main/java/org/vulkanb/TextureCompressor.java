@@ -0,0 +1,68 @@
+package org.vulkanb;
+
+import org.apache.logging.log4j.*;
+import org.vulkanb.eng.graph.vk.*;
+import org.vulkanb.eng.scene.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.lwjgl.vulkan.VK11.*;
+
+// Converts the textures referenced by a model into block compressed KTX2 files, stored next to the original images
+public class TextureCompressor {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private TextureCompressor() {
+        // Utility class
+    }
+
+    private static void compress(String texturePath) throws IOException {
+        TextureData textureData = TextureData.load(texturePath);
+        try {
+            int width = textureData.getWidth();
+            int height = textureData.getHeight();
+            boolean alpha = BcEncoder.hasAlpha(textureData.getData(), width, height);
+            int format = alpha ? VK_FORMAT_BC3_SRGB_BLOCK : VK_FORMAT_BC1_RGB_SRGB_BLOCK;
+            textureData.generateMipmaps(true);
+
+            int mipLevels = textureData.getMipLevels();
+            int[] levelOffsets = textureData.getLevelOffsets();
+            ByteBuffer[] levels = new ByteBuffer[mipLevels];
+            for (int level = 0; level < mipLevels; level++) {
+                int levelWidth = Math.max(1, width >> level);
+                int levelHeight = Math.max(1, height >> level);
+                ByteBuffer levelData = textureData.getData().duplicate().position(levelOffsets[level]).slice();
+                levels[level] = alpha ? BcEncoder.encodeBC3(levelData, levelWidth, levelHeight) :
+                        BcEncoder.encodeBC1(levelData, levelWidth, levelHeight);
+            }
+
+            String ktx2Path = Ktx2.getSiblingPath(texturePath);
+            Ktx2.write(Paths.get(ktx2Path), format, width, height, levels);
+            LOGGER.info("Compressed [{}] into [{}] as {}", texturePath, ktx2Path, alpha ? "BC3" : "BC1");
+        } finally {
+            textureData.cleanup();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            LOGGER.error("Usage: TextureCompressor <modelPath> <texturesDir>");
+            return;
+        }
+        MeshData[] meshDataList = ModelLoader.loadMeshes("compressor", args[0], args[1]);
+        Set<String> texturePaths = new LinkedHashSet<>();
+        for (MeshData meshData : meshDataList) {
+            String texturePath = meshData.material().getTexturePath();
+            if (texturePath != null && !texturePath.trim().isEmpty()) {
+                texturePaths.add(texturePath);
+            }
+        }
+        for (String texturePath : texturePaths) {
+            compress(texturePath);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package org.vulkanb.eng;
 
+import org.apache.logging.log4j.*;
 import org.vulkanb.eng.graph.Render;
 import org.vulkanb.eng.scene.Scene;
 
 public class Engine {
 
+    private static final Logger LOGGER = LogManager.getLogger();
     private IAppLogic appLogic;
     private Render render;
     private boolean running;
@@ -33,6 +35,10 @@ public class Engine {
         double deltaU = 0;
 
         long updateTime = initialTime;
+        // Frame statistics are logged periodically, a non positive interval disables them
+        long statsInterval = engineProperties.getStatsInterval() * 1_000_000L;
+        long statsTime = initialTime;
+        int numFrames = 0;
         while (running && !window.shouldClose()) {
 
             window.pollEvents();
@@ -49,6 +55,15 @@ public class Engine {
             }
 
             render.render(window, scene);
+            numFrames++;
+
+            if (statsInterval > 0 && currentTime - statsTime >= statsInterval) {
+                LOGGER.debug("FPS [{}], frames in flight [{}], {}, texture resident [{}] MB",
+                        numFrames * 1_000_000_000L / (currentTime - statsTime), render.getFramesInFlight(),
+                        render.getRenderStats(), render.getTextureResidentBytes() / (1024 * 1024));
+                statsTime = currentTime;
+                numFrames = 0;
+            }
         }
 
         cleanup();
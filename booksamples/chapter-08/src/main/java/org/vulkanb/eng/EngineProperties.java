@@ -6,18 +6,46 @@ import java.io.*;
 import java.util.Properties;
 
 public class EngineProperties {
+    private static final int DEFAULT_FRAMES_IN_FLIGHT = 2;
+    private static final long DEFAULT_INDICES_ARENA_SIZE = 32 * 1024 * 1024;
+    private static final int DEFAULT_LOADER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final int DEFAULT_PIPELINE_THREADS = 2;
+    private static final int DEFAULT_RECORDING_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
     private static final int DEFAULT_REQUESTED_IMAGES = 3;
+    private static final int DEFAULT_SHADER_THREADS = 2;
+    private static final long DEFAULT_STAGING_BUFFER_SIZE = 64 * 1024 * 1024;
+    private static final long DEFAULT_STATS_INTERVAL = 1000;
+    private static final long DEFAULT_TEXTURE_BUDGET = 256 * 1024 * 1024;
+    private static final long DEFAULT_TRANSIENT_UNIFORM_SIZE = 1024 * 1024;
     private static final int DEFAULT_UPS = 30;
+    private static final long DEFAULT_VERTICES_ARENA_SIZE = 64 * 1024 * 1024;
     private static final String FILENAME = "eng.properties";
     private static final Logger LOGGER = LogManager.getLogger();
     private static EngineProperties instance;
+    private boolean bindless;
     private String defaultTexturePath;
+    private int framesInFlight;
+    private boolean generateMipmaps;
+    private long indicesArenaSize;
+    private int loaderThreads;
+    private String meshCacheDir;
     private String physDeviceName;
+    private String pipelineCacheFile;
+    private int pipelineThreads;
+    private int recordingThreads;
     private int requestedImages;
+    private String shaderCacheDir;
+    private boolean shaderHotReload;
     private boolean shaderRecompilation;
+    private int shaderThreads;
+    private long stagingBufferSize;
+    private long statsInterval;
+    private long textureBudget;
+    private long transientUniformSize;
     private int ups;
     private boolean vSync;
     private boolean validate;
+    private long verticesArenaSize;
 
     private EngineProperties() {
         // Singleton
@@ -31,7 +59,24 @@ public class EngineProperties {
             requestedImages = Integer.parseInt(props.getOrDefault("requestedImages", DEFAULT_REQUESTED_IMAGES).toString());
             vSync = Boolean.parseBoolean(props.getOrDefault("vsync", true).toString());
             shaderRecompilation = Boolean.parseBoolean(props.getOrDefault("shaderRecompilation", false).toString());
+            shaderCacheDir = props.getProperty("shaderCacheDir");
+            shaderHotReload = Boolean.parseBoolean(props.getOrDefault("shaderHotReload", false).toString());
+            shaderThreads = Integer.parseInt(props.getOrDefault("shaderThreads", DEFAULT_SHADER_THREADS).toString());
             defaultTexturePath = props.getProperty("defaultTexturePath");
+            stagingBufferSize = Long.parseLong(props.getOrDefault("stagingBufferSize", DEFAULT_STAGING_BUFFER_SIZE).toString());
+            statsInterval = Long.parseLong(props.getOrDefault("statsInterval", DEFAULT_STATS_INTERVAL).toString());
+            verticesArenaSize = Long.parseLong(props.getOrDefault("verticesArenaSize", DEFAULT_VERTICES_ARENA_SIZE).toString());
+            indicesArenaSize = Long.parseLong(props.getOrDefault("indicesArenaSize", DEFAULT_INDICES_ARENA_SIZE).toString());
+            meshCacheDir = props.getProperty("meshCacheDir");
+            pipelineCacheFile = props.getProperty("pipelineCacheFile");
+            pipelineThreads = Integer.parseInt(props.getOrDefault("pipelineThreads", DEFAULT_PIPELINE_THREADS).toString());
+            generateMipmaps = Boolean.parseBoolean(props.getOrDefault("generateMipmaps", true).toString());
+            textureBudget = Long.parseLong(props.getOrDefault("textureBudget", DEFAULT_TEXTURE_BUDGET).toString());
+            bindless = Boolean.parseBoolean(props.getOrDefault("bindless", true).toString());
+            recordingThreads = Integer.parseInt(props.getOrDefault("recordingThreads", DEFAULT_RECORDING_THREADS).toString());
+            loaderThreads = Integer.parseInt(props.getOrDefault("loaderThreads", DEFAULT_LOADER_THREADS).toString());
+            transientUniformSize = Long.parseLong(props.getOrDefault("transientUniformSize", DEFAULT_TRANSIENT_UNIFORM_SIZE).toString());
+            framesInFlight = Integer.parseInt(props.getOrDefault("framesInFlight", DEFAULT_FRAMES_IN_FLIGHT).toString());
         } catch (IOException excp) {
             LOGGER.error("Could not read [{}] properties file", FILENAME, excp);
         }
@@ -48,18 +93,86 @@ public class EngineProperties {
         return defaultTexturePath;
     }
 
+    public int getFramesInFlight() {
+        return framesInFlight;
+    }
+
+    public long getIndicesArenaSize() {
+        return indicesArenaSize;
+    }
+
+    public int getLoaderThreads() {
+        return loaderThreads;
+    }
+
+    public String getMeshCacheDir() {
+        return meshCacheDir;
+    }
+
     public String getPhysDeviceName() {
         return physDeviceName;
     }
 
+    public String getPipelineCacheFile() {
+        return pipelineCacheFile;
+    }
+
+    public int getPipelineThreads() {
+        return pipelineThreads;
+    }
+
+    public int getRecordingThreads() {
+        return recordingThreads;
+    }
+
     public int getRequestedImages() {
         return requestedImages;
     }
 
+    public String getShaderCacheDir() {
+        return shaderCacheDir;
+    }
+
+    public int getShaderThreads() {
+        return shaderThreads;
+    }
+
+    public long getStagingBufferSize() {
+        return stagingBufferSize;
+    }
+
+    public long getStatsInterval() {
+        return statsInterval;
+    }
+
+    public long getTextureBudget() {
+        return textureBudget;
+    }
+
+    public long getTransientUniformSize() {
+        return transientUniformSize;
+    }
+
     public int getUps() {
         return ups;
     }
 
+    public long getVerticesArenaSize() {
+        return verticesArenaSize;
+    }
+
+    public boolean isBindless() {
+        return bindless;
+    }
+
+    public boolean isGenerateMipmaps() {
+        return generateMipmaps;
+    }
+
+    public boolean isShaderHotReload() {
+        return shaderHotReload;
+    }
+
     public boolean isShaderRecompilation() {
         return shaderRecompilation;
     }
@@ -1,23 +1,59 @@
 package org.vulkanb.eng;
 
-import java.util.List;
+import org.apache.logging.log4j.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class EngineUtils {
 
+    private static final Logger LOGGER = LogManager.getLogger();
+
     private EngineUtils() {
         // Utility class
     }
 
-    public static int[] listIntToArray(List<Integer> list) {
-        return list.stream().mapToInt((Integer v) -> v).toArray();
+    public static ExecutorService createThreadPool(String name, int numThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        // Daemon threads so that pending work never prevents the application from exiting
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(numThreads, threadFactory);
     }
 
-    public static float[] listToArray(List<Float> list) {
-        int size = list != null ? list.size() : 0;
-        float[] floatArr = new float[size];
-        for (int i = 0; i < size; i++) {
-            floatArr[i] = list.get(i);
+    // The buffers are written to a temporary file in the same directory, which then replaces the destination file, so
+    // readers never see a partially written file. The temporary file is deleted if anything fails
+    public static void writeAtomically(Path path, ByteBuffer... buffers) throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmpFile = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+        boolean moved = false;
+        try {
+            try (FileChannel fc = FileChannel.open(tmpFile, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (ByteBuffer buffer : buffers) {
+                    while (buffer.hasRemaining()) {
+                        fc.write(buffer);
+                    }
+                }
+            }
+            Files.move(tmpFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved) {
+                try {
+                    Files.deleteIfExists(tmpFile);
+                } catch (IOException excp) {
+                    LOGGER.warn("Could not delete temporary file [{}]", tmpFile, excp);
+                }
+            }
         }
-        return floatArr;
     }
 }
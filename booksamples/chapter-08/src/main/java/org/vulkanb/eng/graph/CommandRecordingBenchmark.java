@@ -0,0 +1,191 @@
+package org.vulkanb.eng.graph;
+
+import org.apache.logging.log4j.*;
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import org.vulkanb.eng.EngineProperties;
+import org.vulkanb.eng.graph.vk.Queue;
+import org.vulkanb.eng.graph.vk.*;
+
+import java.nio.LongBuffer;
+
+import static org.lwjgl.util.vma.Vma.VMA_MEMORY_USAGE_GPU_ONLY;
+import static org.lwjgl.vulkan.VK11.*;
+import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
+
+// Measures the CPU time of recording N synthetic draws into secondary command buffers with 1 to recordingThreads
+// workers. Each draw binds its vertex, instance and index buffers and issues an indexed draw, like the direct draw path
+// of the forward render activity. Nothing is submitted, so no window or swap chain is needed
+public class CommandRecordingBenchmark {
+
+    private static final int[] DEFAULT_NUM_DRAWS = {10_000, 25_000, 50_000, 100_000};
+    private static final int HEIGHT = 1080;
+    private static final int INSTANCES_PER_BUFFER = 16;
+    private static final int ITERATIONS = 20;
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int WIDTH = 1920;
+
+    private CommandRecordingBenchmark() {
+        // Utility class
+    }
+
+    private static long createRenderPass(Device device) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkAttachmentDescription.Buffer attachments = VkAttachmentDescription.callocStack(2, stack);
+            attachments.get(0)
+                    .format(VK_FORMAT_B8G8R8A8_SRGB)
+                    .samples(VK_SAMPLE_COUNT_1_BIT)
+                    .loadOp(VK_ATTACHMENT_LOAD_OP_CLEAR)
+                    .storeOp(VK_ATTACHMENT_STORE_OP_STORE)
+                    .initialLayout(VK_IMAGE_LAYOUT_UNDEFINED)
+                    .finalLayout(VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+            attachments.get(1)
+                    .format(VK_FORMAT_D32_SFLOAT)
+                    .samples(VK_SAMPLE_COUNT_1_BIT)
+                    .loadOp(VK_ATTACHMENT_LOAD_OP_CLEAR)
+                    .storeOp(VK_ATTACHMENT_STORE_OP_DONT_CARE)
+                    .initialLayout(VK_IMAGE_LAYOUT_UNDEFINED)
+                    .finalLayout(VK_IMAGE_LAYOUT_DEPTH_STENCIL_ATTACHMENT_OPTIMAL);
+
+            VkAttachmentReference.Buffer colorReference = VkAttachmentReference.callocStack(1, stack)
+                    .attachment(0)
+                    .layout(VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+            VkAttachmentReference depthReference = VkAttachmentReference.callocStack(stack)
+                    .attachment(1)
+                    .layout(VK_IMAGE_LAYOUT_DEPTH_STENCIL_ATTACHMENT_OPTIMAL);
+            VkSubpassDescription.Buffer subPass = VkSubpassDescription.callocStack(1, stack)
+                    .pipelineBindPoint(VK_PIPELINE_BIND_POINT_GRAPHICS)
+                    .colorAttachmentCount(colorReference.remaining())
+                    .pColorAttachments(colorReference)
+                    .pDepthStencilAttachment(depthReference);
+
+            VkRenderPassCreateInfo renderPassInfo = VkRenderPassCreateInfo.callocStack(stack)
+                    .sType(VK_STRUCTURE_TYPE_RENDER_PASS_CREATE_INFO)
+                    .pAttachments(attachments)
+                    .pSubpasses(subPass);
+
+            LongBuffer lp = stack.mallocLong(1);
+            vkCheck(vkCreateRenderPass(device.getVkDevice(), renderPassInfo, null, lp),
+                    "Failed to create render pass");
+            return lp.get(0);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (!GLFW.glfwInit()) {
+            throw new IllegalStateException("Unable to initialize GLFW");
+        }
+        int[] numDrawsList = DEFAULT_NUM_DRAWS;
+        if (args.length > 0) {
+            numDrawsList = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                numDrawsList[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        EngineProperties engProps = EngineProperties.getInstance();
+        Instance instance = new Instance(false);
+        PhysicalDevice physicalDevice = PhysicalDevice.createPhysicalDevice(instance, engProps.getPhysDeviceName());
+        Device device = new Device(instance, physicalDevice);
+        Queue.GraphicsQueue graphQueue = new Queue.GraphicsQueue(device, 0);
+        CommandPool commandPool = new CommandPool(device, graphQueue.getQueueFamilyIndex());
+        long vkRenderPass = createRenderPass(device);
+        ShaderProgram shaderProgram = new ShaderProgram(device, new ShaderProgram.ShaderModuleData[]{
+                new ShaderProgram.ShaderModuleData(VK_SHADER_STAGE_VERTEX_BIT, "resources/shaders/fwd_vertex.glsl.spv"),
+                new ShaderProgram.ShaderModuleData(VK_SHADER_STAGE_FRAGMENT_BIT,
+                        "resources/shaders/fwd_fragment.glsl.spv"),
+        });
+        DescriptorSetLayout[] descriptorSetLayouts = new DescriptorSetLayout[]{
+                new UniformsDescriptorSetLayout(device, 0),
+                new TextureDescriptorSetLayout(device, 0),
+        };
+        PipelineCache pipelineCache = new PipelineCache(device);
+        Pipeline.PipeLineCreationInfo pipeLineCreationInfo = new Pipeline.PipeLineCreationInfo(vkRenderPass,
+                shaderProgram, 1, true, 0, 0, new VertexBufferStructure(), descriptorSetLayouts);
+        Pipeline pipeline = new Pipeline(pipelineCache, pipeLineCreationInfo);
+        pipeLineCreationInfo.cleanup();
+        VulkanBuffer vertexBuffer = new VulkanBuffer(device, INSTANCES_PER_BUFFER * GraphConstants.MAT4X4_SIZE,
+                VK_BUFFER_USAGE_VERTEX_BUFFER_BIT, VMA_MEMORY_USAGE_GPU_ONLY, 0);
+        VulkanBuffer indexBuffer = new VulkanBuffer(device, 1024, VK_BUFFER_USAGE_INDEX_BUFFER_BIT,
+                VMA_MEMORY_USAGE_GPU_ONLY, 0);
+
+        try {
+            int maxThreads = Math.max(1, engProps.getRecordingThreads());
+            CommandBuffer.InheritanceInfo inheritanceInfo = new CommandBuffer.InheritanceInfo(vkRenderPass,
+                    VK_NULL_HANDLE, 0);
+            ParallelCommandRecorder.RangeRecorder rangeRecorder = (cmdHandle, from, to) ->
+                    recordDraws(cmdHandle, pipeline, vertexBuffer.getBuffer(), indexBuffer.getBuffer(), from, to);
+            for (int numDraws : numDrawsList) {
+                double baseMillis = 0;
+                for (int numThreads = 1; numThreads <= maxThreads; numThreads++) {
+                    ParallelCommandRecorder commandRecorder = new ParallelCommandRecorder(commandPool, 1, numThreads);
+                    try {
+                        // Warm up
+                        commandRecorder.record(0, numDraws, inheritanceInfo, rangeRecorder);
+                        long start = System.nanoTime();
+                        for (int i = 0; i < ITERATIONS; i++) {
+                            commandRecorder.record(0, numDraws, inheritanceInfo, rangeRecorder);
+                        }
+                        double millis = (System.nanoTime() - start) / 1_000_000.0 / ITERATIONS;
+                        if (numThreads == 1) {
+                            baseMillis = millis;
+                        }
+                        LOGGER.info("[{}] draws, [{}] threads: [{}] ms, speedup [{}]", numDraws, numThreads,
+                                String.format("%.3f", millis), String.format("%.2f", baseMillis / millis));
+                    } finally {
+                        commandRecorder.cleanup();
+                    }
+                }
+            }
+        } finally {
+            device.waitIdle();
+            indexBuffer.cleanup();
+            vertexBuffer.cleanup();
+            pipeline.cleanup();
+            pipelineCache.cleanup();
+            for (DescriptorSetLayout descriptorSetLayout : descriptorSetLayouts) {
+                descriptorSetLayout.cleanup();
+            }
+            shaderProgram.cleanup();
+            vkDestroyRenderPass(device.getVkDevice(), vkRenderPass, null);
+            commandPool.cleanup();
+            device.cleanup();
+            physicalDevice.cleanup();
+            instance.cleanup();
+            GLFW.glfwTerminate();
+        }
+    }
+
+    private static void recordDraws(VkCommandBuffer cmdHandle, Pipeline pipeline, long vkVertexBuffer,
+                                    long vkIndexBuffer, int from, int to) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            vkCmdBindPipeline(cmdHandle, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.getVkPipeline());
+            VkViewport.Buffer viewport = VkViewport.callocStack(1, stack)
+                    .x(0)
+                    .y(HEIGHT)
+                    .height(-HEIGHT)
+                    .width(WIDTH)
+                    .minDepth(0.0f)
+                    .maxDepth(1.0f);
+            vkCmdSetViewport(cmdHandle, 0, viewport);
+            VkRect2D.Buffer scissor = VkRect2D.callocStack(1, stack)
+                    .extent(it -> it
+                            .width(WIDTH)
+                            .height(HEIGHT))
+                    .offset(it -> it
+                            .x(0)
+                            .y(0));
+            vkCmdSetScissor(cmdHandle, 0, scissor);
+
+            LongBuffer vertexBuffers = stack.longs(vkVertexBuffer, vkVertexBuffer);
+            LongBuffer offsets = stack.mallocLong(2);
+            for (int i = from; i < to; i++) {
+                offsets.put(0, 0).put(1, (long) (i % INSTANCES_PER_BUFFER) * GraphConstants.MAT4X4_SIZE);
+                vkCmdBindVertexBuffers(cmdHandle, 0, vertexBuffers, offsets);
+                vkCmdBindIndexBuffer(cmdHandle, vkIndexBuffer, 0, VK_INDEX_TYPE_UINT32);
+                vkCmdDrawIndexed(cmdHandle, 36, 1, 0, 0, 0);
+            }
+        }
+    }
+}
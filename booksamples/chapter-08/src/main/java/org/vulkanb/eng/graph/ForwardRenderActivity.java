@@ -1,6 +1,6 @@
 package org.vulkanb.eng.graph;
 
-import org.joml.Matrix4f;
+import org.apache.logging.log4j.*;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.*;
 import org.lwjgl.util.shaderc.Shaderc;
@@ -14,97 +14,201 @@ import java.nio.*;
 import java.util.*;
 
 import static org.lwjgl.vulkan.VK11.*;
-import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
 
 public class ForwardRenderActivity {
 
+    private static final String BINDLESS_FRAGMENT_SHADER_FILE_GLSL = "resources/shaders/fwd_bindless_fragment.glsl";
+    private static final String BINDLESS_FRAGMENT_SHADER_FILE_SPV = BINDLESS_FRAGMENT_SHADER_FILE_GLSL + ".spv";
+    // Fraction of the view depth range a draw can move in front of the previous one, with the same texture, before
+    // retained command buffers are sorted and recorded again
+    private static final float DEPTH_RESORT_THRESHOLD = 0.01f;
     private static final String FRAGMENT_SHADER_FILE_GLSL = "resources/shaders/fwd_fragment.glsl";
     private static final String FRAGMENT_SHADER_FILE_SPV = FRAGMENT_SHADER_FILE_GLSL + ".spv";
-    private static final int MAX_DESCRIPTORS = 100;
+    private static final Logger LOGGER = LogManager.getLogger();
     private static final String VERTEX_SHADER_FILE_GLSL = "resources/shaders/fwd_vertex.glsl";
     private static final String VERTEX_SHADER_FILE_SPV = VERTEX_SHADER_FILE_GLSL + ".spv";
-    private CommandBuffer[] commandBuffers;
+    // Only set when the device supports descriptor indexing, all the textures are then bound once per frame
+    private BindlessTextureSet bindlessTextureSet;
+    private ParallelCommandRecorder commandRecorder;
     private ImageView[] depthImageViews;
     private Image[] depthImages;
-    private DescriptorPool descriptorPool;
+    private DescriptorAllocator descriptorAllocator;
     private DescriptorSetLayout[] descriptorSetLayouts;
     private Map<String, TextureDescriptorSet> descriptorSetMap;
     private Device device;
-    private Fence[] fences;
     private FrameBuffer[] frameBuffers;
     private ShaderProgram fwdShaderProgram;
-    private Pipeline pipeLine;
-    private PipelineCache pipelineCache;
-    private VulkanBuffer projMatrixUniform;
+    private GeometryArena geometryArena;
+    // Only set when indirect draws can use a first instance, otherwise draws are recorded directly
+    private IndirectDrawBuffer[] indirectDrawBuffers;
+    private InstanceBuffer[] instanceBuffers;
+    private int lastFrameIdx;
+    private int maxDrawIndirectCount;
+    // Pipeline being compiled for reloaded shaders, the current one is used until it is ready
+    private PipelineRegistry.PipelineKey pendingPipelineKey;
+    private ShaderProgram pendingShaderProgram;
+    private PipelineRegistry.PipelineKey pipelineKey;
+    private PipelineRegistry pipelineRegistry;
+    // State the secondary command buffers of each frame in flight were recorded with
+    private List<List<DrawCommand>> recordedDrawCommands;
+    private List<List<CommandBuffer>> recordedSecondaryBuffers;
+    private long[] recordedStructureVersions;
+    private long[] recordedTransformsVersions;
+    private long[] recordedVersions;
     private SwapChainRenderPass renderPass;
+    private RenderQueue renderQueue;
+    // Counters of the commands recorded for each swap chain image
+    private RenderStats[] renderStats;
+    private ShaderProgram.ShaderModuleData[] shaderModuleData;
+    // Only set when shaders are hot reloaded
+    private ShaderWatcher shaderWatcher;
     private SwapChain swapChain;
-    private TextureDescriptorSetLayout textureDescriptorSetLayout;
-    private TextureSampler textureSampler;
+    private DescriptorSetLayout textureDescriptorSetLayout;
+    private Map<String, Integer> textureIndices;
+    private Map<Integer, TextureSampler> textureSamplers;
+    private TransientUniformAllocator uniformAllocator;
     private UniformsDescriptorSet uniformsDescriptorSet;
     private UniformsDescriptorSetLayout uniformsDescriptorSetLayout;
+    // Incremented when meshes, textures or the swap chain change, invalidating the recorded command buffers
+    private long version;
 
-    public ForwardRenderActivity(SwapChain swapChain, CommandPool commandPool, PipelineCache pipelineCache, Scene scene) {
+    public ForwardRenderActivity(SwapChain swapChain, CommandPool commandPool, PipelineRegistry pipelineRegistry,
+                                 ShaderCompiler shaderCompiler, GeometryArena geometryArena, Scene scene,
+                                 int framesInFlight) {
         this.swapChain = swapChain;
-        this.pipelineCache = pipelineCache;
+        this.pipelineRegistry = pipelineRegistry;
+        this.geometryArena = geometryArena;
         device = swapChain.getDevice();
 
-        int numImages = swapChain.getImageViews().length;
         createDepthImages();
         renderPass = new SwapChainRenderPass(swapChain, depthImages[0].getFormat());
         createFrameBuffers();
 
         EngineProperties engineProperties = EngineProperties.getInstance();
-        if (engineProperties.isShaderRecompilation()) {
-            ShaderCompiler.compileShaderIfChanged(VERTEX_SHADER_FILE_GLSL, Shaderc.shaderc_glsl_vertex_shader);
-            ShaderCompiler.compileShaderIfChanged(FRAGMENT_SHADER_FILE_GLSL, Shaderc.shaderc_glsl_fragment_shader);
+        boolean bindless = engineProperties.isBindless() && BindlessTextureSet.isSupported(device);
+        String fragmentShaderGlsl = bindless ? BINDLESS_FRAGMENT_SHADER_FILE_GLSL : FRAGMENT_SHADER_FILE_GLSL;
+        String fragmentShaderSpv = bindless ? BINDLESS_FRAGMENT_SHADER_FILE_SPV : FRAGMENT_SHADER_FILE_SPV;
+        if (shaderCompiler != null) {
+            ShaderCompiler.ShaderSource[] shaderSources = new ShaderCompiler.ShaderSource[]{
+                    new ShaderCompiler.ShaderSource(VERTEX_SHADER_FILE_GLSL, Shaderc.shaderc_glsl_vertex_shader),
+                    new ShaderCompiler.ShaderSource(fragmentShaderGlsl, Shaderc.shaderc_glsl_fragment_shader),
+            };
+            shaderCompiler.compileShadersIfChanged(shaderSources);
+            if (engineProperties.isShaderHotReload()) {
+                shaderWatcher = new ShaderWatcher(shaderCompiler, shaderSources);
+            }
         }
-        fwdShaderProgram = new ShaderProgram(device, new ShaderProgram.ShaderModuleData[]
-                {
-                        new ShaderProgram.ShaderModuleData(VK_SHADER_STAGE_VERTEX_BIT, VERTEX_SHADER_FILE_SPV),
-                        new ShaderProgram.ShaderModuleData(VK_SHADER_STAGE_FRAGMENT_BIT, FRAGMENT_SHADER_FILE_SPV),
-                });
+        shaderModuleData = new ShaderProgram.ShaderModuleData[]{
+                new ShaderProgram.ShaderModuleData(VK_SHADER_STAGE_VERTEX_BIT, VERTEX_SHADER_FILE_SPV),
+                new ShaderProgram.ShaderModuleData(VK_SHADER_STAGE_FRAGMENT_BIT, fragmentShaderSpv),
+        };
+        fwdShaderProgram = new ShaderProgram(device, shaderModuleData);
 
         uniformsDescriptorSetLayout = new UniformsDescriptorSetLayout(device, 0);
-        textureDescriptorSetLayout = new TextureDescriptorSetLayout(device, 0);
+        if (bindless) {
+            BindlessTextureDescriptorSetLayout bindlessDescriptorSetLayout = new BindlessTextureDescriptorSetLayout(
+                    device, 0, BindlessTextureSet.MAX_TEXTURES);
+            bindlessTextureSet = new BindlessTextureSet(device, bindlessDescriptorSetLayout, 0);
+            textureDescriptorSetLayout = bindlessDescriptorSetLayout;
+        } else {
+            textureDescriptorSetLayout = new TextureDescriptorSetLayout(device, 0);
+        }
         descriptorSetLayouts = new DescriptorSetLayout[]{
                 uniformsDescriptorSetLayout,
                 textureDescriptorSetLayout,
         };
 
-        Pipeline.PipeLineCreationInfo pipeLineCreationInfo = new Pipeline.PipeLineCreationInfo(
-                renderPass.getVkRenderPass(), fwdShaderProgram, 1, true, GraphConstants.MAT4X4_SIZE * 2,
-                new VertexBufferStructure(), descriptorSetLayouts);
-        pipeLine = new Pipeline(this.pipelineCache, pipeLineCreationInfo);
-        pipeLineCreationInfo.cleanup();
+        // Compiled in the background, nothing is drawn until it is ready
+        pipelineKey = requestPipeline(fwdShaderProgram);
 
-        commandBuffers = new CommandBuffer[numImages];
-        fences = new Fence[numImages];
-        for (int i = 0; i < numImages; i++) {
-            commandBuffers[i] = new CommandBuffer(commandPool, true, false);
-            fences[i] = new Fence(device, true);
+        // Buffers written by the CPU while building a frame are per frame in flight
+        instanceBuffers = new InstanceBuffer[framesInFlight];
+        for (int i = 0; i < framesInFlight; i++) {
+            instanceBuffers[i] = new InstanceBuffer(device);
         }
-        descriptorPool = new DescriptorPool(device, MAX_DESCRIPTORS, 0);
+        if (device.isDrawIndirectFirstInstance()) {
+            indirectDrawBuffers = new IndirectDrawBuffer[framesInFlight];
+            for (int i = 0; i < framesInFlight; i++) {
+                indirectDrawBuffers[i] = new IndirectDrawBuffer(device);
+            }
+            // The limit is an unsigned value, commonly 2^32 - 1
+            maxDrawIndirectCount = (int) Math.min(Integer.MAX_VALUE, Integer.toUnsignedLong(
+                    device.getPhysicalDevice().getVkPhysicalDeviceProperties().limits().maxDrawIndirectCount()));
+        }
+        recordedDrawCommands = new ArrayList<>(Collections.nCopies(framesInFlight, Collections.emptyList()));
+        recordedSecondaryBuffers = new ArrayList<>(Collections.nCopies(framesInFlight, Collections.emptyList()));
+        recordedStructureVersions = new long[framesInFlight];
+        recordedTransformsVersions = new long[framesInFlight];
+        recordedVersions = new long[framesInFlight];
+        Arrays.fill(recordedVersions, -1);
+        renderQueue = new RenderQueue();
+        renderStats = new RenderStats[framesInFlight];
+        for (int i = 0; i < framesInFlight; i++) {
+            renderStats[i] = new RenderStats();
+        }
+        commandRecorder = new ParallelCommandRecorder(commandPool, framesInFlight,
+                engineProperties.getRecordingThreads());
+        descriptorAllocator = new DescriptorAllocator(device);
         descriptorSetMap = new HashMap<>();
-        textureSampler = new TextureSampler(device, 1);
-        projMatrixUniform = new VulkanBuffer(device, GraphConstants.MAT4X4_SIZE, VK_BUFFER_USAGE_UNIFORM_BUFFER_BIT,
-                VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT);
-        uniformsDescriptorSet = new UniformsDescriptorSet(descriptorPool, uniformsDescriptorSetLayout, projMatrixUniform);
-        setProjectionUniform(scene.getPerspective().getPerspectiveMatrix());
+        textureIndices = new HashMap<>();
+        textureSamplers = new HashMap<>();
+        uniformAllocator = new TransientUniformAllocator(device, framesInFlight,
+                engineProperties.getTransientUniformSize());
+        uniformsDescriptorSet = new UniformsDescriptorSet(device, descriptorAllocator, uniformsDescriptorSetLayout,
+                uniformAllocator);
+    }
+
+    // View depth of the closest instance, the camera sits at the origin looking down the negative z axis
+    private static float getClosestDepth(DrawCommand drawCommand) {
+        float depth = Float.MAX_VALUE;
+        for (Entity entity : drawCommand.entities()) {
+            depth = Math.min(depth, -entity.getModelMatrix().m32());
+        }
+        return depth;
+    }
+
+    // Draws with the same texture are recorded front to back, entities moving only update their matrices, so the order
+    // is checked again whenever transforms change
+    private static boolean isDepthOrderStale(List<DrawCommand> drawCommands) {
+        float threshold = DEPTH_RESORT_THRESHOLD * Perspective.Z_FAR;
+        String prevTextureId = null;
+        float prevDepth = 0;
+        for (DrawCommand drawCommand : drawCommands) {
+            String textureId = drawCommand.mesh().getTextureId();
+            float depth = getClosestDepth(drawCommand);
+            if (prevTextureId != null && prevTextureId.equals(textureId) && depth < prevDepth - threshold) {
+                return true;
+            }
+            prevTextureId = textureId;
+            prevDepth = depth;
+        }
+        return false;
     }
 
     public void cleanup() {
-        projMatrixUniform.cleanup();
-        textureSampler.cleanup();
-        descriptorPool.cleanup();
-        pipeLine.cleanup();
+        if (shaderWatcher != null) {
+            shaderWatcher.cleanup();
+        }
+        if (pendingShaderProgram != null) {
+            pendingShaderProgram.cleanup();
+        }
+        uniformAllocator.cleanup();
+        Arrays.stream(instanceBuffers).forEach(InstanceBuffer::cleanup);
+        if (indirectDrawBuffers != null) {
+            Arrays.stream(indirectDrawBuffers).forEach(IndirectDrawBuffer::cleanup);
+        }
+        textureSamplers.values().forEach(TextureSampler::cleanup);
+        descriptorAllocator.cleanup();
+        if (bindlessTextureSet != null) {
+            bindlessTextureSet.cleanup();
+        }
         Arrays.stream(descriptorSetLayouts).forEach(DescriptorSetLayout::cleanup);
         Arrays.stream(depthImageViews).forEach(ImageView::cleanup);
         Arrays.stream(depthImages).forEach(Image::cleanup);
         fwdShaderProgram.cleanup();
         Arrays.stream(frameBuffers).forEach(FrameBuffer::cleanup);
         renderPass.cleanup();
-        Arrays.stream(commandBuffers).forEach(CommandBuffer::cleanup);
-        Arrays.stream(fences).forEach(Fence::cleanup);
+        commandRecorder.cleanup();
     }
 
     private void createDepthImages() {
@@ -138,36 +242,72 @@ public class ForwardRenderActivity {
         }
     }
 
-    public void meshUnLoaded(VulkanMesh vulkanMesh) {
-        descriptorSetMap.remove(vulkanMesh.getTextureId());
+    // Stats of the commands submitted for the last recorded frame
+    public RenderStats getRenderStats() {
+        return renderStats[lastFrameIdx];
+    }
+
+    private TextureSampler getTextureSampler(Texture texture) {
+        // Samplers only depend on the number of mip levels, so they are shared between textures
+        return textureSamplers.computeIfAbsent(texture.getMipLevels(), mipLevels -> new TextureSampler(device, mipLevels));
     }
 
     public void meshesLoaded(VulkanMesh[] meshes, TextureCache textureCache) {
+        version++;
         for (VulkanMesh vulkanMesh : meshes) {
-            TextureDescriptorSet textureDescriptorSet = descriptorSetMap.get(vulkanMesh.getTextureId());
-            if (textureDescriptorSet == null) {
-                Texture texture = textureCache.getTexture(vulkanMesh.getTextureId());
-                textureDescriptorSet = new TextureDescriptorSet(descriptorPool, textureDescriptorSetLayout,
-                        texture, textureSampler, 0);
-                descriptorSetMap.put(vulkanMesh.getTextureId(), textureDescriptorSet);
+            String textureId = vulkanMesh.getTextureId();
+            if (bindlessTextureSet != null) {
+                if (!textureIndices.containsKey(textureId)) {
+                    Texture texture = textureCache.getTexture(textureId);
+                    textureIndices.put(textureId, bindlessTextureSet.addTexture(texture, getTextureSampler(texture)));
+                }
+            } else if (!descriptorSetMap.containsKey(textureId)) {
+                Texture texture = textureCache.getTexture(textureId);
+                TextureDescriptorSet textureDescriptorSet = new TextureDescriptorSet(device, descriptorAllocator,
+                        textureDescriptorSetLayout, texture, getTextureSampler(texture), 0);
+                descriptorSetMap.put(textureId, textureDescriptorSet);
             }
         }
     }
 
-    public void recordCommandBuffers(List<VulkanMesh> meshes, Scene scene) {
+    public void meshesUnLoaded() {
+        version++;
+    }
+
+    // The frame resources fence must have been waited, so the buffers of that frame are no longer in use by the GPU
+    public void recordCommandBuffers(FrameResources frameResources, List<VulkanMesh> meshes, Scene scene) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             VkExtent2D swapChainExtent = swapChain.getSwapChainExtent();
             int width = swapChainExtent.width();
             int height = swapChainExtent.height();
             int idx = swapChain.getCurrentFrame();
+            int frameIdx = frameResources.getIndex();
+            lastFrameIdx = frameIdx;
 
-            Fence fence = fences[idx];
-            CommandBuffer commandBuffer = commandBuffers[idx];
+            CommandBuffer commandBuffer = frameResources.getCommandBuffer();
             FrameBuffer frameBuffer = frameBuffers[idx];
 
-            fence.fenceWait();
-            fence.reset();
+            // Secondary command buffers are kept while the meshes, textures, swap chain and entities they were recorded
+            // with are the same, in that case only the model matrices that changed since then are written. They are
+            // recorded again if entities have moved enough to break the front to back order of the draws
+            InstanceBuffer instanceBuffer = instanceBuffers[frameIdx];
+            long structureVersion = scene.getStructureVersion();
+            long transformsVersion = scene.getTransformsVersion();
+            boolean transformsChanged = recordedTransformsVersions[frameIdx] != transformsVersion;
+            if (recordedVersions[frameIdx] == version && recordedStructureVersions[frameIdx] == structureVersion &&
+                    !(transformsChanged && isDepthOrderStale(recordedDrawCommands.get(frameIdx)))) {
+                if (transformsChanged) {
+                    updateInstances(recordedDrawCommands.get(frameIdx), instanceBuffer,
+                            recordedTransformsVersions[frameIdx]);
+                    recordedTransformsVersions[frameIdx] = transformsVersion;
+                }
+            } else if (recordSecondaryBuffers(frameIdx, meshes, scene)) {
+                recordedVersions[frameIdx] = version;
+                recordedStructureVersions[frameIdx] = structureVersion;
+                recordedTransformsVersions[frameIdx] = transformsVersion;
+            }
 
+            // The primary command buffer is always recorded, it targets the frame buffer of the acquired image
             commandBuffer.reset();
             VkClearValue.Buffer clearValues = VkClearValue.callocStack(2, stack);
             clearValues.apply(0, v -> v.color().float32(0, 0.5f).float32(1, 0.7f).float32(2, 0.9f).float32(3, 1));
@@ -182,9 +322,33 @@ public class ForwardRenderActivity {
 
             commandBuffer.beginRecording();
             VkCommandBuffer cmdHandle = commandBuffer.getVkCommandBuffer();
-            vkCmdBeginRenderPass(cmdHandle, renderPassBeginInfo, VK_SUBPASS_CONTENTS_INLINE);
+            vkCmdBeginRenderPass(cmdHandle, renderPassBeginInfo, VK_SUBPASS_CONTENTS_SECONDARY_COMMAND_BUFFERS);
 
-            vkCmdBindPipeline(cmdHandle, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeLine.getVkPipeline());
+            List<CommandBuffer> secondaryBuffers = recordedSecondaryBuffers.get(frameIdx);
+            if (!secondaryBuffers.isEmpty()) {
+                PointerBuffer pSecondaryBuffers = stack.mallocPointer(secondaryBuffers.size());
+                for (int i = 0; i < secondaryBuffers.size(); i++) {
+                    pSecondaryBuffers.put(i, secondaryBuffers.get(i).getVkCommandBuffer());
+                }
+                vkCmdExecuteCommands(cmdHandle, pSecondaryBuffers);
+            }
+
+            vkCmdEndRenderPass(cmdHandle);
+            commandBuffer.endRecording();
+        }
+    }
+
+    // Called from the recording threads, state is not inherited by secondary command buffers so it is set up again
+    private void recordDraws(VkCommandBuffer cmdHandle, int frameIdx, Pipeline pipeline, int projMatrixOffset,
+                             List<DrawCommand> drawCommands, int from, int to) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkExtent2D swapChainExtent = swapChain.getSwapChainExtent();
+            int width = swapChainExtent.width();
+            int height = swapChainExtent.height();
+            InstanceBuffer instanceBuffer = instanceBuffers[frameIdx];
+            IndirectDrawBuffer indirectDrawBuffer = indirectDrawBuffers != null ? indirectDrawBuffers[frameIdx] : null;
+
+            vkCmdBindPipeline(cmdHandle, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.getVkPipeline());
 
             VkViewport.Buffer viewport = VkViewport.callocStack(1, stack)
                     .x(0)
@@ -204,37 +368,139 @@ public class ForwardRenderActivity {
                             .y(0));
             vkCmdSetScissor(cmdHandle, 0, scissor);
 
-            LongBuffer offsets = stack.mallocLong(1);
+            LongBuffer offsets = stack.mallocLong(2);
             offsets.put(0, 0L);
-            ByteBuffer pushConstantBuffer = stack.malloc(GraphConstants.MAT4X4_SIZE);
-
-            LongBuffer descriptorSets = stack.mallocLong(2)
+            offsets.put(1, 0L);
+            LongBuffer vertexBuffers = stack.mallocLong(2);
+            vertexBuffers.put(0, geometryArena.getVerticesBuffer().getBuffer());
+            vertexBuffers.put(1, instanceBuffer.getBuffer());
+            vkCmdBindVertexBuffers(cmdHandle, 0, vertexBuffers, offsets);
+            vkCmdBindIndexBuffer(cmdHandle, geometryArena.getIndicesBuffer().getBuffer(), 0, VK_INDEX_TYPE_UINT32);
+
+            // All the textures live in the same set with bindless textures, it is bound once and only the material
+            // offset of the uniforms set changes between draws
+            LongBuffer descriptorSets = stack.mallocLong(bindlessTextureSet != null ? 1 : 2)
                     .put(0, uniformsDescriptorSet.getVkDescriptorSet());
-            for (VulkanMesh mesh : meshes) {
-                LongBuffer vertexBuffer = stack.mallocLong(1);
-                vertexBuffer.put(0, mesh.getVerticesBuffer().getBuffer());
-                vkCmdBindVertexBuffers(cmdHandle, 0, vertexBuffer, offsets);
-                vkCmdBindIndexBuffer(cmdHandle, mesh.getIndicesBuffer().getBuffer(), 0, VK_INDEX_TYPE_UINT32);
-
-                TextureDescriptorSet textureDescriptorSet = descriptorSetMap.get(mesh.getTextureId());
-                List<Entity> entities = scene.getEntitiesByMeshId(mesh.getId());
-                for (Entity entity : entities) {
-                    descriptorSets.put(1, textureDescriptorSet.getVkDescriptorSet());
+            if (bindlessTextureSet != null) {
+                vkCmdBindDescriptorSets(cmdHandle, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.getVkPipelineLayout(),
+                        1, stack.longs(bindlessTextureSet.getVkDescriptorSet()), null);
+            }
+            IntBuffer dynamicOffsets = stack.ints(projMatrixOffset, 0);
+
+            // Draws are sorted by texture, so the material only needs to be bound when it differs from the previous
+            // draw. Consecutive draws sharing the same texture are submitted together with indirect draws when available
+            long boundTexture = -1;
+            int bindsIssued = 0;
+            int bindsSkipped = 0;
+            int groupStart = from;
+            for (int i = from; i < to; i++) {
+                DrawCommand drawCommand = drawCommands.get(i);
+                VulkanMesh mesh = drawCommand.mesh();
+                long texture = bindlessTextureSet != null ? textureIndices.get(mesh.getTextureId()) :
+                        descriptorSetMap.get(mesh.getTextureId()).getVkDescriptorSet();
+                if (texture != boundTexture) {
+                    submitIndirectDraws(cmdHandle, indirectDrawBuffer, groupStart, i - groupStart);
+                    groupStart = i;
+                    int materialOffset = uniformAllocator.allocate(frameIdx, UniformsDescriptorSetLayout.MATERIAL_SIZE);
+                    if (bindlessTextureSet != null) {
+                        uniformAllocator.putInt(materialOffset, (int) texture);
+                    } else {
+                        descriptorSets.put(1, texture);
+                    }
+                    dynamicOffsets.put(1, materialOffset);
                     vkCmdBindDescriptorSets(cmdHandle, VK_PIPELINE_BIND_POINT_GRAPHICS,
-                            pipeLine.getVkPipelineLayout(), 0, descriptorSets, null);
+                            pipeline.getVkPipelineLayout(), 0, descriptorSets, dynamicOffsets);
+                    boundTexture = texture;
+                    bindsIssued++;
+                } else {
+                    bindsSkipped++;
+                }
 
-                    setPushConstants(cmdHandle, entity.getModelMatrix(), pushConstantBuffer);
-                    vkCmdDrawIndexed(cmdHandle, mesh.getIndicesCount(), 1, 0, 0, 0);
+                // All the entities sharing the mesh are drawn with a single instanced draw
+                List<Entity> entities = drawCommand.entities();
+                int firstInstance = drawCommand.firstInstance();
+                int numEntities = entities.size();
+                for (int j = 0; j < numEntities; j++) {
+                    instanceBuffer.setModelMatrix(firstInstance + j, entities.get(j).getModelMatrix());
+                }
+                if (indirectDrawBuffer != null) {
+                    indirectDrawBuffer.setCommand(i, mesh.getIndicesCount(), numEntities, mesh.getFirstIndex(),
+                            mesh.getVertexOffset(), firstInstance);
+                } else {
+                    vkCmdDrawIndexed(cmdHandle, mesh.getIndicesCount(), numEntities, mesh.getFirstIndex(),
+                            mesh.getVertexOffset(), firstInstance);
                 }
             }
+            submitIndirectDraws(cmdHandle, indirectDrawBuffer, groupStart, to - groupStart);
+            renderStats[frameIdx].add(to - from, bindsIssued, bindsSkipped);
+        }
+    }
 
-            vkCmdEndRenderPass(cmdHandle);
-            commandBuffer.endRecording();
+    // Returns false if the secondary command buffers could not be recorded yet
+    private boolean recordSecondaryBuffers(int frameIdx, List<VulkanMesh> meshes, Scene scene) {
+        // Draws are skipped while the pipeline is being compiled, recording is retried on the next frame
+        Pipeline pipeline = pipelineRegistry.get(pipelineKey);
+        if (pipeline == null) {
+            recordedDrawCommands.set(frameIdx, Collections.emptyList());
+            recordedSecondaryBuffers.set(frameIdx, Collections.emptyList());
+            return false;
         }
+
+        // Each mesh gets a contiguous range of instances, so draws can be recorded in any thread
+        List<DrawCommand> unsortedCommands = new ArrayList<>(meshes.size());
+        int numInstances = 0;
+        for (VulkanMesh mesh : meshes) {
+            List<Entity> entities = scene.getEntitiesByMeshId(mesh.getId());
+            if (entities != null && !entities.isEmpty()) {
+                // Copied, retained command buffers keep the instance counts they were recorded with
+                unsortedCommands.add(new DrawCommand(mesh, List.copyOf(entities), numInstances));
+                numInstances += entities.size();
+            }
+        }
+        List<DrawCommand> drawCommands = sortDrawCommands(unsortedCommands);
+        instanceBuffers[frameIdx].ensureCapacity(numInstances);
+        if (indirectDrawBuffers != null) {
+            indirectDrawBuffers[frameIdx].ensureCapacity(drawCommands.size());
+        }
+
+        // Transient uniforms live as long as the secondary command buffers that reference them
+        uniformAllocator.reset(frameIdx);
+        int projMatrixOffset = uniformAllocator.allocate(frameIdx, UniformsDescriptorSetLayout.PROJ_MATRIX_SIZE);
+        uniformAllocator.putMatrix(projMatrixOffset, scene.getPerspective().getPerspectiveMatrix());
+
+        // No frame buffer is set in the inheritance info, so the secondary command buffers can be executed for any
+        // swap chain image
+        renderStats[frameIdx].reset();
+        CommandBuffer.InheritanceInfo inheritanceInfo = new CommandBuffer.InheritanceInfo(
+                renderPass.getVkRenderPass(), VK_NULL_HANDLE, 0);
+        List<CommandBuffer> secondaryBuffers = commandRecorder.record(frameIdx, drawCommands.size(), inheritanceInfo,
+                (secondaryHandle, from, to) -> recordDraws(secondaryHandle, frameIdx, pipeline, projMatrixOffset,
+                        drawCommands, from, to));
+        recordedDrawCommands.set(frameIdx, drawCommands);
+        recordedSecondaryBuffers.set(frameIdx, secondaryBuffers);
+        return true;
+    }
+
+    // The current pipeline keeps being used until the one for the new shaders is ready
+    private void reloadShaders() {
+        try {
+            pendingShaderProgram = new ShaderProgram(device, shaderModuleData);
+        } catch (RuntimeException excp) {
+            LOGGER.error("Error loading reloaded shaders, keeping current pipeline", excp);
+            return;
+        }
+        pendingPipelineKey = requestPipeline(pendingShaderProgram);
+    }
+
+    private PipelineRegistry.PipelineKey requestPipeline(ShaderProgram shaderProgram) {
+        Pipeline.PipeLineCreationInfo pipeLineCreationInfo = new Pipeline.PipeLineCreationInfo(
+                renderPass.getVkRenderPass(), shaderProgram, 1, true, 0, 0, new VertexBufferStructure(),
+                descriptorSetLayouts);
+        return pipelineRegistry.request(pipeLineCreationInfo);
     }
 
     public void resize(SwapChain swapChain, Scene scene) {
-        setProjectionUniform(scene.getPerspective().getPerspectiveMatrix());
+        version++;
         this.swapChain = swapChain;
         for (FrameBuffer frameBuffer : frameBuffers) {
             frameBuffer.cleanup();
@@ -249,34 +515,130 @@ public class ForwardRenderActivity {
         createFrameBuffers();
     }
 
-    private void setProjectionUniform(Matrix4f projectionMatrix) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            PointerBuffer pointerBuffer = stack.mallocPointer(1);
-            vkCheck(vkMapMemory(device.getVkDevice(), projMatrixUniform.getMemory(), 0, projMatrixUniform.getAllocationSize(),
-                    0, pointerBuffer), "Failed to map UBO memory");
-            long data = pointerBuffer.get(0);
-            ByteBuffer matrixBuffer = MemoryUtil.memByteBuffer(data, (int) projMatrixUniform.getAllocationSize());
-            projectionMatrix.get(0, matrixBuffer);
-            vkUnmapMemory(device.getVkDevice(), projMatrixUniform.getMemory());
+    private List<DrawCommand> sortDrawCommands(List<DrawCommand> drawCommands) {
+        // Textures and meshes get small consecutive ids for this recording, to fit in the sort keys
+        Map<String, Integer> meshIds = new HashMap<>();
+        Map<String, Integer> textureIds = new HashMap<>();
+        renderQueue.clear();
+        int numCommands = drawCommands.size();
+        for (int i = 0; i < numCommands; i++) {
+            DrawCommand drawCommand = drawCommands.get(i);
+            int meshId = meshIds.computeIfAbsent(drawCommand.mesh().getId(), k -> meshIds.size());
+            int textureId = textureIds.computeIfAbsent(drawCommand.mesh().getTextureId(), k -> textureIds.size());
+            float depth = getClosestDepth(drawCommand);
+            renderQueue.add(RenderQueue.createKey(0, textureId, meshId, depth / Perspective.Z_FAR), i);
         }
+        renderQueue.sort();
+
+        List<DrawCommand> result = new ArrayList<>(numCommands);
+        for (int i = 0; i < numCommands; i++) {
+            result.add(drawCommands.get(renderQueue.getItem(i)));
+        }
+        return result;
     }
 
-    private void setPushConstants(VkCommandBuffer cmdHandle, Matrix4f modelMatrix, ByteBuffer pushConstantBuffer) {
-        modelMatrix.get(0, pushConstantBuffer);
-        vkCmdPushConstants(cmdHandle, pipeLine.getVkPipelineLayout(),
-                VK_SHADER_STAGE_VERTEX_BIT, 0, pushConstantBuffer);
+    private void submitIndirectDraws(VkCommandBuffer cmdHandle, IndirectDrawBuffer indirectDrawBuffer, int firstDraw,
+                                     int numDraws) {
+        if (indirectDrawBuffer == null || numDraws == 0) {
+            return;
+        }
+        long commandsBuffer = indirectDrawBuffer.getCommandsBuffer();
+        int stride = IndirectDrawBuffer.COMMAND_SIZE;
+        if (!device.isMultiDrawIndirect()) {
+            for (int i = 0; i < numDraws; i++) {
+                vkCmdDrawIndexedIndirect(cmdHandle, commandsBuffer, (long) (firstDraw + i) * stride, 1, stride);
+            }
+            return;
+        }
+        for (int start = 0; start < numDraws; start += maxDrawIndirectCount) {
+            int count = Math.min(maxDrawIndirectCount, numDraws - start);
+            long offset = (long) (firstDraw + start) * stride;
+            if (device.isDrawIndirectCount()) {
+                // The count is read by the GPU, so the same commands could later be filled by a culling pass
+                indirectDrawBuffer.setCount(firstDraw + start, count);
+                KHRDrawIndirectCount.vkCmdDrawIndexedIndirectCountKHR(cmdHandle, commandsBuffer, offset,
+                        indirectDrawBuffer.getCountsBuffer(),
+                        (long) (firstDraw + start) * IndirectDrawBuffer.COUNT_SIZE, count, stride);
+            } else {
+                vkCmdDrawIndexedIndirect(cmdHandle, commandsBuffer, offset, count, stride);
+            }
+        }
     }
 
-    public void submit(Queue queue) {
+    public void submit(Queue queue, FrameResources frameResources) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            int idx = swapChain.getCurrentFrame();
-            CommandBuffer commandBuffer = commandBuffers[idx];
-            Fence currentFence = fences[idx];
-            SwapChain.SyncSemaphores syncSemaphores = swapChain.getSyncSemaphoresList()[idx];
-            queue.submit(stack.pointers(commandBuffer.getVkCommandBuffer()),
-                    stack.longs(syncSemaphores.imgAcquisitionSemaphores().getVkSemaphore()),
+            Fence currentFence = frameResources.getFence();
+            currentFence.reset();
+            queue.submit(stack.pointers(frameResources.getCommandBuffer().getVkCommandBuffer()),
+                    stack.longs(frameResources.getImgAcquisitionSemaphore().getVkSemaphore()),
                     stack.ints(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT),
-                    stack.longs(syncSemaphores.renderCompleteSemaphores().getVkSemaphore()), currentFence);
+                    stack.longs(swapChain.getRenderCompleteSemaphore().getVkSemaphore()), currentFence);
+        }
+    }
+
+    public void textureEvicted(String textureId) {
+        version++;
+        Integer textureIndex = textureIndices.remove(textureId);
+        if (textureIndex != null) {
+            bindlessTextureSet.removeTexture(textureIndex);
         }
+        TextureDescriptorSet textureDescriptorSet = descriptorSetMap.remove(textureId);
+        if (textureDescriptorSet != null) {
+            descriptorAllocator.free(textureDescriptorSetLayout, textureDescriptorSet.getVkDescriptorSet());
+        }
+    }
+
+    private void updateInstances(List<DrawCommand> drawCommands, InstanceBuffer instanceBuffer, long sinceVersion) {
+        for (DrawCommand drawCommand : drawCommands) {
+            List<Entity> entities = drawCommand.entities();
+            int numEntities = entities.size();
+            for (int i = 0; i < numEntities; i++) {
+                Entity entity = entities.get(i);
+                if (entity.getVersion() > sinceVersion) {
+                    instanceBuffer.setModelMatrix(drawCommand.firstInstance() + i, entity.getModelMatrix());
+                }
+            }
+        }
+    }
+
+    // Must be called at a frame boundary. Picks up shader changes and, once the pipeline for them has been compiled,
+    // swaps it in, handing the previous pipeline and shaders to the deletion queue
+    public void updateShaders(DeletionQueue deletionQueue, long frame) {
+        if (pendingShaderProgram == null) {
+            if (shaderWatcher != null && shaderWatcher.pollChanges()) {
+                reloadShaders();
+            }
+            return;
+        }
+
+        if (pendingPipelineKey.equals(pipelineKey)) {
+            // The reloaded shaders have the same code as the current ones, so the current pipeline is kept
+            LOGGER.debug("Reloaded shaders are unchanged, keeping current pipeline");
+            pendingShaderProgram.cleanup();
+            pendingShaderProgram = null;
+        } else if (pipelineRegistry.isFailed(pendingPipelineKey)) {
+            LOGGER.error("Error compiling pipeline for reloaded shaders, keeping current pipeline");
+            pipelineRegistry.release(pendingPipelineKey);
+            pendingShaderProgram.cleanup();
+            pendingShaderProgram = null;
+        } else if (pipelineRegistry.get(pendingPipelineKey) != null) {
+            LOGGER.info("Swapping pipeline for reloaded shaders");
+            Pipeline oldPipeline = pipelineRegistry.release(pipelineKey);
+            ShaderProgram oldShaderProgram = fwdShaderProgram;
+            deletionQueue.defer(frame, () -> {
+                if (oldPipeline != null) {
+                    oldPipeline.cleanup();
+                }
+                oldShaderProgram.cleanup();
+            });
+            pipelineKey = pendingPipelineKey;
+            fwdShaderProgram = pendingShaderProgram;
+            pendingShaderProgram = null;
+            // Recorded command buffers reference the previous pipeline
+            version++;
+        }
+    }
+
+    private record DrawCommand(VulkanMesh mesh, List<Entity> entities, int firstInstance) {
     }
-}
\ No newline at end of file
+}
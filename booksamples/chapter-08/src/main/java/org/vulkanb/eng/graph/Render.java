@@ -3,36 +3,63 @@ package org.vulkanb.eng.graph;
 import org.apache.logging.log4j.*;
 import org.vulkanb.eng.*;
 import org.vulkanb.eng.graph.vk.Queue;
+import org.vulkanb.eng.graph.vk.Semaphore;
 import org.vulkanb.eng.graph.vk.*;
 import org.vulkanb.eng.scene.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 public class Render {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
+    private AsyncUploader asyncUploader;
     private CommandPool commandPool;
+    private DeletionQueue deletionQueue;
     private Device device;
+    private long frame;
+    private FrameResources[] frameResources;
     private ForwardRenderActivity fwdRenderActivity;
+    private GeometryArena geometryArena;
     private Queue.GraphicsQueue graphQueue;
     private Instance instance;
     private List<VulkanMesh> meshList;
+    private ConcurrentLinkedQueue<MeshData[]> pendingMeshes;
+    private Deque<PendingUpload> pendingUploads;
     private PhysicalDevice physicalDevice;
     private PipelineCache pipelineCache;
+    private PipelineRegistry pipelineRegistry;
     private Queue.PresentQueue presentQueue;
+    // Only set when shaders are recompiled at startup or hot reloaded
+    private ShaderCompiler shaderCompiler;
+    private StagingRing stagingRing;
     private Surface surface;
     private SwapChain swapChain;
     private TextureCache textureCache;
+    private Queue.TransferQueue transferQueue;
 
     public void cleanup() {
         presentQueue.waitIdle();
         graphQueue.waitIdle();
         device.waitIdle();
+        deletionQueue.flushAll();
         textureCache.cleanup();
         meshList.forEach(VulkanMesh::cleanup);
+        for (PendingUpload pendingUpload : pendingUploads) {
+            pendingUpload.meshes().forEach(VulkanMesh::cleanup);
+            pendingUpload.discardedMeshes().forEach(VulkanMesh::cleanup);
+        }
+        geometryArena.cleanup();
+        asyncUploader.cleanup();
+        stagingRing.cleanup();
+        pipelineRegistry.cleanup();
         pipelineCache.cleanup();
         fwdRenderActivity.cleanup();
+        if (shaderCompiler != null) {
+            shaderCompiler.cleanup();
+        }
+        Arrays.stream(frameResources).forEach(FrameResources::cleanup);
         commandPool.cleanup();
         swapChain.cleanup();
         surface.cleanup();
@@ -41,42 +68,118 @@ public class Render {
         instance.cleanup();
     }
 
+    // Meshes whose uploads have completed are made visible, in submission order
+    private void completeUploads() {
+        asyncUploader.update();
+        while (!pendingUploads.isEmpty() && pendingUploads.peekFirst().ticket().isComplete()) {
+            PendingUpload pendingUpload = pendingUploads.removeFirst();
+            pendingUpload.discardedMeshes().forEach(this::releaseMesh);
+            VulkanMesh[] meshes = pendingUpload.meshes().toArray(new VulkanMesh[0]);
+            LOGGER.debug("Loaded {} meshe(s)", meshes.length);
+            meshList.addAll(pendingUpload.meshes());
+            fwdRenderActivity.meshesLoaded(meshes, textureCache);
+        }
+    }
+
+    public int getFramesInFlight() {
+        return frameResources.length;
+    }
+
+    public RenderStats getRenderStats() {
+        return fwdRenderActivity.getRenderStats();
+    }
+
+    public long getTextureResidentBytes() {
+        return textureCache.getResidentBytes();
+    }
+
     public void init(Window window, Scene scene) {
         EngineProperties engProps = EngineProperties.getInstance();
         instance = new Instance(engProps.isValidate());
         physicalDevice = PhysicalDevice.createPhysicalDevice(instance, engProps.getPhysDeviceName());
-        device = new Device(physicalDevice);
+        device = new Device(instance, physicalDevice);
         surface = new Surface(physicalDevice, window.getWindowHandle());
         graphQueue = new Queue.GraphicsQueue(device, 0);
         presentQueue = new Queue.PresentQueue(device, surface, 0);
+        transferQueue = new Queue.TransferQueue(device, 0);
         swapChain = new SwapChain(device, surface, window, engProps.getRequestedImages(),
                 engProps.isvSync());
         commandPool = new CommandPool(device, graphQueue.getQueueFamilyIndex());
-        pipelineCache = new PipelineCache(device);
-        fwdRenderActivity = new ForwardRenderActivity(swapChain, commandPool, pipelineCache, scene);
+        int framesInFlight = engProps.getFramesInFlight();
+        LOGGER.info("Using [{}] frames in flight for [{}] swap chain images", framesInFlight,
+                swapChain.getNumImages());
+        frameResources = new FrameResources[framesInFlight];
+        for (int i = 0; i < framesInFlight; i++) {
+            frameResources[i] = new FrameResources(commandPool, i);
+        }
+        pipelineCache = new PipelineCache(device, engProps.getPipelineCacheFile());
+        pipelineRegistry = new PipelineRegistry(pipelineCache, engProps.getPipelineThreads());
+        geometryArena = new GeometryArena(device, engProps.getVerticesArenaSize(), engProps.getIndicesArenaSize());
+        if (engProps.isShaderRecompilation()) {
+            shaderCompiler = new ShaderCompiler(engProps.getShaderCacheDir(), engProps.getShaderThreads());
+        }
+        fwdRenderActivity = new ForwardRenderActivity(swapChain, commandPool, pipelineRegistry, shaderCompiler,
+                geometryArena, scene, framesInFlight);
         meshList = new ArrayList<>();
-        textureCache = new TextureCache();
+        pendingMeshes = new ConcurrentLinkedQueue<>();
+        textureCache = new TextureCache(device);
+        stagingRing = new StagingRing(device, engProps.getStagingBufferSize());
+        asyncUploader = new AsyncUploader(device, transferQueue, graphQueue, stagingRing);
+        pendingUploads = new ArrayDeque<>();
+        deletionQueue = new DeletionQueue();
     }
 
+    // Uploads are submitted without waiting, the meshes are rendered once they are resident
     public void loadMeshes(MeshData[] meshDataList) {
         LOGGER.debug("Loading {} meshe(s)", meshDataList.length);
-        VulkanMesh[] meshes = VulkanMesh.loadMeshes(textureCache, commandPool, graphQueue, meshDataList);
-        LOGGER.debug("Loaded {} meshe(s)", meshes.length);
-        meshList.addAll(Arrays.asList(meshes));
+        AsyncUploader.Batch batch = asyncUploader.begin();
+        VulkanMesh[] meshes = VulkanMesh.loadMeshes(textureCache, device, batch, geometryArena, meshDataList);
+        pendingUploads.addLast(new PendingUpload(asyncUploader.submit(batch), new ArrayList<>(Arrays.asList(meshes)),
+                new ArrayList<>()));
+    }
 
-        fwdRenderActivity.meshesLoaded(meshes, textureCache);
+    // Mesh data is built on the loader threads, GPU resources are created later on the render thread. Meshes are
+    // only queued once their textures have been decoded, so the render thread never waits for them
+    public void loadMeshes(CompletableFuture<MeshData[]> meshesFuture) {
+        meshesFuture.whenComplete((meshDataList, excp) -> {
+            if (excp != null) {
+                LOGGER.error("Error loading meshes", excp);
+            } else {
+                CompletableFuture<?>[] textureFutures = new CompletableFuture<?>[meshDataList.length];
+                for (int i = 0; i < meshDataList.length; i++) {
+                    textureFutures[i] = textureCache.prefetch(meshDataList[i].material().getTexturePath());
+                }
+                // Decoding errors are reported when the textures are created, as for the synchronous path
+                CompletableFuture.allOf(textureFutures).whenComplete((v, textureExcp) ->
+                        pendingMeshes.add(meshDataList));
+            }
+        });
     }
 
     public void render(Window window, Scene scene) {
-        if (window.isResized() || swapChain.acquireNextImage()) {
+        uploadPendingMeshes();
+        completeUploads();
+
+        // Once the fence of the frame slot is signaled, the frame that used it last, and all the previous ones, are done
+        FrameResources currentFrame = frameResources[(int) (frame % frameResources.length)];
+        currentFrame.getFence().fenceWait();
+
+        Semaphore imgAcquisitionSemaphore = currentFrame.getImgAcquisitionSemaphore();
+        if (window.isResized() || swapChain.acquireNextImage(imgAcquisitionSemaphore)) {
             window.resetResized();
             resize(window, scene);
             scene.getPerspective().resize(window.getWidth(), window.getHeight());
-            swapChain.acquireNextImage();
+            swapChain.acquireNextImage(imgAcquisitionSemaphore);
         }
 
-        fwdRenderActivity.recordCommandBuffers(meshList, scene);
-        fwdRenderActivity.submit(presentQueue);
+        // Reloaded shaders are swapped in before recording, the pipelines they replace are destroyed once the frames
+        // in flight have completed
+        fwdRenderActivity.updateShaders(deletionQueue, frame);
+        fwdRenderActivity.recordCommandBuffers(currentFrame, meshList, scene);
+        textureCache.evict(frame - frameResources.length).forEach(fwdRenderActivity::textureEvicted);
+        deletionQueue.flush(frame - frameResources.length);
+        fwdRenderActivity.submit(presentQueue, currentFrame);
+        frame++;
 
         if (swapChain.presentImage(graphQueue)) {
             window.setResized(true);
@@ -96,24 +199,58 @@ public class Render {
         fwdRenderActivity.resize(swapChain, scene);
     }
 
+    // The mesh may still be used by the frames in flight, its resources are destroyed once they have completed
+    private void releaseMesh(VulkanMesh mesh) {
+        textureCache.release(mesh.getTextureId(), frame);
+        deletionQueue.defer(frame, mesh::cleanup);
+    }
+
     public void unloadMesh(String id) {
+        // Meshes still being uploaded are released once their upload completes
+        for (PendingUpload pendingUpload : pendingUploads) {
+            Iterator<VulkanMesh> it = pendingUpload.meshes().iterator();
+            while (it.hasNext()) {
+                VulkanMesh mesh = it.next();
+                if (mesh.getId().equals(id)) {
+                    pendingUpload.discardedMeshes().add(mesh);
+                    it.remove();
+                }
+            }
+        }
         Iterator<VulkanMesh> it = meshList.iterator();
         while (it.hasNext()) {
             VulkanMesh mesh = it.next();
             if (mesh.getId().equals(id)) {
-                fwdRenderActivity.meshUnLoaded(mesh);
-                mesh.cleanup();
+                releaseMesh(mesh);
                 it.remove();
+                fwdRenderActivity.meshesUnLoaded();
             }
         }
     }
 
     public void unloadMeshes() {
-        device.waitIdle();
-        for (VulkanMesh vulkanMesh : meshList) {
-            fwdRenderActivity.meshUnLoaded(vulkanMesh);
-            vulkanMesh.cleanup();
+        for (PendingUpload pendingUpload : pendingUploads) {
+            pendingUpload.discardedMeshes().addAll(pendingUpload.meshes());
+            pendingUpload.meshes().clear();
         }
+        meshList.forEach(this::releaseMesh);
         meshList.clear();
+        fwdRenderActivity.meshesUnLoaded();
+    }
+
+    private void uploadPendingMeshes() {
+        if (pendingMeshes.isEmpty()) {
+            return;
+        }
+        // Upload all the meshes that have been completed since last frame in a single batch
+        List<MeshData> batch = new ArrayList<>();
+        MeshData[] meshDataList;
+        while ((meshDataList = pendingMeshes.poll()) != null) {
+            batch.addAll(Arrays.asList(meshDataList));
+        }
+        loadMeshes(batch.toArray(new MeshData[0]));
+    }
+
+    private record PendingUpload(UploadTicket ticket, List<VulkanMesh> meshes, List<VulkanMesh> discardedMeshes) {
     }
 }
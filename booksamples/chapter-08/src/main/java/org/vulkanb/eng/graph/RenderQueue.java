@@ -0,0 +1,98 @@
+package org.vulkanb.eng.graph;
+
+import java.util.Arrays;
+
+// Draws identified by a 64 bit sort key, ordered so that draws sharing state are consecutive. From the most to the
+// least significant bits the key holds the pipeline, the descriptor set (texture), the depth and the mesh. Meshes are
+// all in the same buffers, so they do not need to be consecutive and only break ties between draws at the same depth
+public class RenderQueue {
+
+    private static final int DEPTH_BITS = 16;
+    private static final int DESCRIPTOR_BITS = 20;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MESH_BITS = 20;
+    private static final int PIPELINE_BITS = 8;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+    private final int[] histogram;
+    private int[] items;
+    private long[] keys;
+    private int size;
+    private int[] tmpItems;
+    private long[] tmpKeys;
+
+    public RenderQueue() {
+        histogram = new int[1 << RADIX_BITS];
+        keys = new long[INITIAL_CAPACITY];
+        items = new int[INITIAL_CAPACITY];
+        tmpKeys = new long[INITIAL_CAPACITY];
+        tmpItems = new int[INITIAL_CAPACITY];
+    }
+
+    // Depth is expected in the [0, 1] range, closer draws go first so they occlude the ones behind
+    public static long createKey(int pipeline, int descriptor, int mesh, float depth) {
+        long depthBits = (long) (Math.min(Math.max(depth, 0.0f), 1.0f) * ((1 << DEPTH_BITS) - 1));
+        return ((long) (pipeline & ((1 << PIPELINE_BITS) - 1)) << (DESCRIPTOR_BITS + DEPTH_BITS + MESH_BITS)) |
+                ((long) (descriptor & ((1 << DESCRIPTOR_BITS) - 1)) << (DEPTH_BITS + MESH_BITS)) |
+                (depthBits << MESH_BITS) |
+                (long) (mesh & ((1 << MESH_BITS) - 1));
+    }
+
+    public void add(long key, int item) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            items = Arrays.copyOf(items, capacity);
+            tmpKeys = new long[capacity];
+            tmpItems = new int[capacity];
+        }
+        keys[size] = key;
+        items[size] = item;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // Valid after sorting, returns the item in the given position
+    public int getItem(int position) {
+        return items[position];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // Stable LSD radix sort, unsigned, one byte per pass. Passes where all the keys share the same byte are skipped
+    public void sort() {
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(histogram, 0);
+            for (int i = 0; i < size; i++) {
+                histogram[(int) (keys[i] >>> shift) & RADIX_MASK]++;
+            }
+            if (size == 0 || histogram[(int) (keys[0] >>> shift) & RADIX_MASK] == size) {
+                continue;
+            }
+
+            int offset = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                int count = histogram[i];
+                histogram[i] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < size; i++) {
+                int position = histogram[(int) (keys[i] >>> shift) & RADIX_MASK]++;
+                tmpKeys[position] = keys[i];
+                tmpItems[position] = items[i];
+            }
+
+            long[] swapKeys = keys;
+            keys = tmpKeys;
+            tmpKeys = swapKeys;
+            int[] swapItems = items;
+            items = tmpItems;
+            tmpItems = swapItems;
+        }
+    }
+}
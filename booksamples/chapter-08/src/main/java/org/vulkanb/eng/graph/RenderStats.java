@@ -0,0 +1,47 @@
+package org.vulkanb.eng.graph;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Counters of the commands recorded for a frame, updated from the recording threads
+public class RenderStats {
+
+    private final AtomicInteger bindsIssued;
+    private final AtomicInteger bindsSkipped;
+    private final AtomicInteger draws;
+
+    public RenderStats() {
+        bindsIssued = new AtomicInteger();
+        bindsSkipped = new AtomicInteger();
+        draws = new AtomicInteger();
+    }
+
+    public void add(int numDraws, int numBindsIssued, int numBindsSkipped) {
+        draws.addAndGet(numDraws);
+        bindsIssued.addAndGet(numBindsIssued);
+        bindsSkipped.addAndGet(numBindsSkipped);
+    }
+
+    public int getBindsIssued() {
+        return bindsIssued.get();
+    }
+
+    public int getBindsSkipped() {
+        return bindsSkipped.get();
+    }
+
+    public int getDraws() {
+        return draws.get();
+    }
+
+    public void reset() {
+        draws.set(0);
+        bindsIssued.set(0);
+        bindsSkipped.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "draws [" + getDraws() + "], binds issued [" + getBindsIssued() + "], binds skipped [" +
+                getBindsSkipped() + "]";
+    }
+}
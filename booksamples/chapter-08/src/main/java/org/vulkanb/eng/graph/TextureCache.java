@@ -1,40 +1,165 @@
 package org.vulkanb.eng.graph;
 
-import org.vulkanb.eng.EngineProperties;
+import org.apache.logging.log4j.*;
+import org.vulkanb.eng.*;
 import org.vulkanb.eng.graph.vk.*;
 
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class TextureCache {
 
-    private Map<String, Texture> textureMap;
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final long budget;
+    // A path is removed only once its texture is in textureMap, or its decoding failed, so it is never decoded twice
+    private final Map<String, CompletableFuture<TextureData>> decodingMap;
+    private final ExecutorService executor;
+    private final boolean textureCompressionBC;
+    // Access ordered, so iteration starts with the least recently used texture. Reads also modify the order, so it is
+    // only accessed while holding the cache lock, loader threads included
+    private final LinkedHashMap<String, TextureEntry> textureMap;
+    private long residentBytes;
 
-    public TextureCache() {
-        textureMap = new HashMap<>();
+    public TextureCache(Device device) {
+        textureCompressionBC = device.isTextureCompressionBC();
+        budget = EngineProperties.getInstance().getTextureBudget();
+        textureMap = new LinkedHashMap<>(16, 0.75f, true);
+        decodingMap = new ConcurrentHashMap<>();
+        executor = EngineUtils.createThreadPool("texture-decoder", EngineProperties.getInstance().getLoaderThreads());
+    }
+
+    private static String resolvePath(String texturePath) {
+        String path = texturePath;
+        if (texturePath == null || texturePath.trim().isEmpty()) {
+            EngineProperties engProperties = EngineProperties.getInstance();
+            path = engProperties.getDefaultTexturePath();
+        }
+        return path;
     }
 
     public synchronized void cleanup() {
-        for (Map.Entry<String, Texture> entry : textureMap.entrySet()) {
-            entry.getValue().cleanup();
+        executor.shutdownNow();
+        for (CompletableFuture<TextureData> future : decodingMap.values()) {
+            // Decodings still running free their data as soon as they finish
+            future.thenAccept(TextureData::cleanup);
+        }
+        decodingMap.clear();
+        for (TextureEntry entry : textureMap.values()) {
+            entry.texture.cleanup();
         }
         textureMap.clear();
+        residentBytes = 0;
     }
 
-    public synchronized Texture createTexture(Device device, String texturePath, int format) {
-        String path = texturePath;
-        if (texturePath == null || texturePath.trim().isEmpty()) {
-            EngineProperties engProperties = EngineProperties.getInstance();
-            path = engProperties.getDefaultTexturePath();
+    // Decoding runs on the worker pool, only the creation of the Vulkan objects is serialized. The wait for the
+    // decoding happens outside the lock, callers that must not block wait for prefetch to complete first. Each call
+    // acquires a reference to the texture, which must be given back through release
+    public Texture createTexture(Device device, String texturePath, int format) {
+        String path = resolvePath(texturePath);
+        CompletableFuture<TextureData> future;
+        synchronized (this) {
+            TextureEntry entry = textureMap.get(path);
+            if (entry != null) {
+                entry.references++;
+                return entry.texture;
+            }
+            future = decode(path);
+        }
+
+        TextureData textureData;
+        try {
+            textureData = future.join();
+        } catch (CompletionException excp) {
+            decodingMap.remove(path, future);
+            throw new RuntimeException("Could not decode texture [" + path + "]", excp.getCause());
+        }
+
+        synchronized (this) {
+            // Concurrent requests share the decoding, only the first one creates the texture
+            TextureEntry entry = textureMap.get(path);
+            if (entry == null) {
+                Texture texture = new Texture(device, path, textureData, format);
+                entry = new TextureEntry(texture);
+                textureMap.put(path, entry);
+                residentBytes += texture.getSize();
+                // Removed once the texture is in the map, so prefetch never starts a decoding nobody consumes
+                decodingMap.remove(path, future);
+            }
+            entry.references++;
+            return entry.texture;
         }
-        Texture texture = textureMap.get(path);
-        if (texture == null) {
-            texture = new Texture(device, path, format);
-            textureMap.put(path, texture);
+    }
+
+    private CompletableFuture<TextureData> decode(String path) {
+        return decodingMap.computeIfAbsent(path, p -> CompletableFuture.supplyAsync(() -> {
+            // Block compressed versions of the textures are generated offline by TextureCompressor
+            String ktx2Path = Ktx2.getSiblingPath(p);
+            if (textureCompressionBC && Files.exists(Paths.get(ktx2Path))) {
+                return TextureData.load(ktx2Path);
+            }
+            TextureData textureData = TextureData.load(p);
+            if (EngineProperties.getInstance().isGenerateMipmaps()) {
+                // Textures are sampled as sRGB color data, so mip levels are filtered in linear space
+                textureData.generateMipmaps(true);
+            }
+            return textureData;
+        }, executor));
+    }
+
+    // Unreferenced textures are kept while the cache is within its budget. When over budget, the least recently
+    // used ones are destroyed, but only if no frame still in flight (newer than completedFrame) can be using them
+    public synchronized List<String> evict(long completedFrame) {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, TextureEntry>> it = textureMap.entrySet().iterator();
+        while (residentBytes > budget && it.hasNext()) {
+            Map.Entry<String, TextureEntry> mapEntry = it.next();
+            TextureEntry entry = mapEntry.getValue();
+            if (entry.references == 0 && entry.lastUsedFrame <= completedFrame) {
+                LOGGER.debug("Evicting texture [{}]", mapEntry.getKey());
+                entry.texture.cleanup();
+                residentBytes -= entry.texture.getSize();
+                evicted.add(mapEntry.getKey());
+                it.remove();
+            }
+        }
+        return evicted;
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized Texture getTexture(String texturePath) {
+        TextureEntry entry = textureMap.get(texturePath.trim());
+        return entry != null ? entry.texture : null;
+    }
+
+    // Starts decoding a texture in the background, requests for a path which is already being decoded share the
+    // same decoding. The result completes, successfully or not, once createTexture can be called without blocking
+    public synchronized CompletableFuture<?> prefetch(String texturePath) {
+        String path = resolvePath(texturePath);
+        if (textureMap.containsKey(path)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return decode(path);
+    }
+
+    public synchronized void release(String texturePath, long frame) {
+        TextureEntry entry = textureMap.get(texturePath);
+        if (entry != null && entry.references > 0) {
+            entry.references--;
+            entry.lastUsedFrame = frame;
         }
-        return texture;
     }
 
-    public Texture getTexture(String texturePath) {
-        return textureMap.get(texturePath.trim());
+    private static class TextureEntry {
+        private final Texture texture;
+        private long lastUsedFrame;
+        private int references;
+
+        private TextureEntry(Texture texture) {
+            this.texture = texture;
+        }
     }
-}
\ No newline at end of file
+}
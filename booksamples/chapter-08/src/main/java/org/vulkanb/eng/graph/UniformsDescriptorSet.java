@@ -4,38 +4,28 @@ import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 import org.vulkanb.eng.graph.vk.*;
 
-import java.nio.LongBuffer;
-
 import static org.lwjgl.vulkan.VK10.*;
-import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
 
 public class UniformsDescriptorSet {
 
     private long vkDescriptorSet;
 
-    public UniformsDescriptorSet(DescriptorPool descriptorPool, DescriptorSetLayout descriptorSetLayout,
-                                 VulkanBuffer projMatrixBuffer) {
+    public UniformsDescriptorSet(Device device, DescriptorAllocator descriptorAllocator,
+                                 DescriptorSetLayout descriptorSetLayout, TransientUniformAllocator uniformAllocator) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            Device device = descriptorPool.getDevice();
-            LongBuffer pDescriptorSetLayout = stack.mallocLong(1);
-            pDescriptorSetLayout.put(0, descriptorSetLayout.getVkDescriptorLayout());
-            VkDescriptorSetAllocateInfo allocInfo = VkDescriptorSetAllocateInfo.callocStack(stack)
-                    .sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_ALLOCATE_INFO)
-                    .descriptorPool(descriptorPool.getVkDescriptorPool())
-                    .pSetLayouts(pDescriptorSetLayout);
-
-            LongBuffer pDescriptorSet = stack.mallocLong(1);
-            vkCheck(vkAllocateDescriptorSets(device.getVkDevice(), allocInfo, pDescriptorSet),
-                    "Failed to create descriptor set");
-
-            vkDescriptorSet = pDescriptorSet.get(0);
+            vkDescriptorSet = descriptorAllocator.allocate(descriptorSetLayout);
 
             VkDescriptorBufferInfo.Buffer projBufferInfo = VkDescriptorBufferInfo.callocStack(1, stack)
-                    .buffer(projMatrixBuffer.getBuffer())
+                    .buffer(uniformAllocator.getBuffer())
+                    .offset(0)
+                    .range(UniformsDescriptorSetLayout.PROJ_MATRIX_SIZE);
+
+            VkDescriptorBufferInfo.Buffer materialBufferInfo = VkDescriptorBufferInfo.callocStack(1, stack)
+                    .buffer(uniformAllocator.getBuffer())
                     .offset(0)
-                    .range(projMatrixBuffer.getRequestedSize());
+                    .range(UniformsDescriptorSetLayout.MATERIAL_SIZE);
 
-            VkWriteDescriptorSet.Buffer descrBuffer = VkWriteDescriptorSet.callocStack(1, stack);
+            VkWriteDescriptorSet.Buffer descrBuffer = VkWriteDescriptorSet.callocStack(2, stack);
 
             // Projection matrix
             descrBuffer.get(0)
@@ -43,10 +33,20 @@ public class UniformsDescriptorSet {
                     .dstSet(vkDescriptorSet)
                     .dstBinding(0)
                     .dstArrayElement(0)
-                    .descriptorType(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER)
+                    .descriptorType(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC)
                     .descriptorCount(1)
                     .pBufferInfo(projBufferInfo);
 
+            // Material
+            descrBuffer.get(1)
+                    .sType(VK_STRUCTURE_TYPE_WRITE_DESCRIPTOR_SET)
+                    .dstSet(vkDescriptorSet)
+                    .dstBinding(1)
+                    .dstArrayElement(0)
+                    .descriptorType(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC)
+                    .descriptorCount(1)
+                    .pBufferInfo(materialBufferInfo);
+
             vkUpdateDescriptorSets(device.getVkDevice(), descrBuffer, null);
         }
     }
@@ -10,8 +10,11 @@ import java.nio.LongBuffer;
 import static org.lwjgl.vulkan.VK11.*;
 import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
 
+// Both bindings are dynamic uniform buffers, their data is placed with dynamic offsets when binding the set
 public class UniformsDescriptorSetLayout extends DescriptorSetLayout {
 
+    public static final int MATERIAL_SIZE = GraphConstants.INT_LENGTH;
+    public static final int PROJ_MATRIX_SIZE = GraphConstants.MAT4X4_SIZE;
     private static final Logger LOGGER = LogManager.getLogger();
 
     public UniformsDescriptorSetLayout(Device device, int binding) {
@@ -19,13 +22,19 @@ public class UniformsDescriptorSetLayout extends DescriptorSetLayout {
 
         LOGGER.debug("Creating uniforms descriptor set layout");
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            VkDescriptorSetLayoutBinding.Buffer layoutBindings = VkDescriptorSetLayoutBinding.callocStack(1, stack);
+            VkDescriptorSetLayoutBinding.Buffer layoutBindings = VkDescriptorSetLayoutBinding.callocStack(2, stack);
             // Projection  matrix
             layoutBindings.get(0)
                     .binding(binding)
-                    .descriptorType(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER)
+                    .descriptorType(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC)
                     .descriptorCount(1)
                     .stageFlags(VK_SHADER_STAGE_VERTEX_BIT);
+            // Material
+            layoutBindings.get(1)
+                    .binding(binding + 1)
+                    .descriptorType(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC)
+                    .descriptorCount(1)
+                    .stageFlags(VK_SHADER_STAGE_FRAGMENT_BIT);
 
             VkDescriptorSetLayoutCreateInfo layoutInfo = VkDescriptorSetLayoutCreateInfo.callocStack(stack)
                     .sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_LAYOUT_CREATE_INFO)
@@ -35,6 +44,8 @@ public class UniformsDescriptorSetLayout extends DescriptorSetLayout {
             vkCheck(vkCreateDescriptorSetLayout(device.getVkDevice(), layoutInfo, null, lp),
                     "Failed to create uniforms descriptor set layout");
             super.vkDescriptorLayout = lp.get(0);
+            setLayoutInfo(0, layoutBindings, null);
+            addDescriptorTypeCount(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC, 2);
         }
     }
 }
@@ -0,0 +1,199 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.util.*;
+
+import static org.lwjgl.vulkan.VK11.*;
+
+// Uploads buffers and images on the transfer queue without blocking the caller. When the transfer queue belongs to a
+// different family than the graphics one, resources are released by the transfer queue and acquired by the graphics
+// queue, which waits for the transfer through a semaphore. Must be used from the render thread
+public class AsyncUploader {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final Device device;
+    private final CommandPool graphicsCommandPool;
+    private final Queue.GraphicsQueue graphicsQueue;
+    private final boolean ownershipTransfer;
+    private final Deque<Upload> pendingUploads;
+    private final StagingRing stagingRing;
+    private final CommandPool transferCommandPool;
+    private final Queue.TransferQueue transferQueue;
+
+    public AsyncUploader(Device device, Queue.TransferQueue transferQueue, Queue.GraphicsQueue graphicsQueue,
+                         StagingRing stagingRing) {
+        this.device = device;
+        this.transferQueue = transferQueue;
+        this.graphicsQueue = graphicsQueue;
+        this.stagingRing = stagingRing;
+        ownershipTransfer = transferQueue.getQueueFamilyIndex() != graphicsQueue.getQueueFamilyIndex();
+        LOGGER.debug("Creating async uploader, transfer family [{}], graphics family [{}]",
+                transferQueue.getQueueFamilyIndex(), graphicsQueue.getQueueFamilyIndex());
+        transferCommandPool = new CommandPool(device, transferQueue.getQueueFamilyIndex());
+        graphicsCommandPool = ownershipTransfer ? new CommandPool(device, graphicsQueue.getQueueFamilyIndex()) : null;
+        pendingUploads = new ArrayDeque<>();
+    }
+
+    public Batch begin() {
+        CommandBuffer transferCmd = new CommandBuffer(transferCommandPool, true, true);
+        transferCmd.beginRecording();
+        CommandBuffer acquireCmd = null;
+        if (ownershipTransfer) {
+            acquireCmd = new CommandBuffer(graphicsCommandPool, true, true);
+            acquireCmd.beginRecording();
+        }
+        return new Batch(transferCmd, acquireCmd);
+    }
+
+    // The device must be idle
+    public void cleanup() {
+        LOGGER.debug("Destroying async uploader");
+        pendingUploads.forEach(Upload::cleanup);
+        pendingUploads.clear();
+        transferCommandPool.cleanup();
+        if (graphicsCommandPool != null) {
+            graphicsCommandPool.cleanup();
+        }
+    }
+
+    public UploadTicket submit(Batch batch) {
+        UploadTicket ticket = new UploadTicket();
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            batch.transferCmd.endRecording();
+            Fence fence = new Fence(device, false);
+            Semaphore semaphore = null;
+            if (ownershipTransfer) {
+                batch.acquireCmd.endRecording();
+                semaphore = new Semaphore(device);
+                transferQueue.submit(stack.pointers(batch.transferCmd.getVkCommandBuffer()), null, null,
+                        stack.longs(semaphore.getVkSemaphore()), null);
+                graphicsQueue.submit(stack.pointers(batch.acquireCmd.getVkCommandBuffer()),
+                        stack.longs(semaphore.getVkSemaphore()), stack.ints(VK_PIPELINE_STAGE_ALL_COMMANDS_BIT),
+                        null, fence);
+            } else {
+                transferQueue.submit(stack.pointers(batch.transferCmd.getVkCommandBuffer()), null, null, null,
+                        fence);
+            }
+            stagingRing.submitted(fence);
+            pendingUploads.addLast(new Upload(ticket, batch.transferCmd, batch.acquireCmd, semaphore, fence));
+        }
+        return ticket;
+    }
+
+    // Completes the uploads that have finished, in submission order, so their tickets report completion. Staging
+    // memory is reclaimed before destroying the fence of an upload, since the staging ring references it
+    public void update() {
+        while (!pendingUploads.isEmpty() && pendingUploads.peekFirst().fence().isSignaled()) {
+            stagingRing.reclaim();
+            Upload upload = pendingUploads.removeFirst();
+            upload.cleanup();
+            upload.ticket().setComplete();
+        }
+    }
+
+    // Blocks until all the submitted uploads have completed
+    public void waitIdle() {
+        pendingUploads.forEach(upload -> upload.fence().fenceWait());
+        update();
+    }
+
+    // Commands of an upload. The copies are recorded in the transfer command buffer, the acquire barriers, if any,
+    // in a command buffer for the graphics queue
+    public class Batch {
+
+        private final CommandBuffer acquireCmd;
+        private final CommandBuffer transferCmd;
+
+        private Batch(CommandBuffer transferCmd, CommandBuffer acquireCmd) {
+            this.transferCmd = transferCmd;
+            this.acquireCmd = acquireCmd;
+        }
+
+        public StagingRing getStagingRing() {
+            return stagingRing;
+        }
+
+        public CommandBuffer getTransferCmd() {
+            return transferCmd;
+        }
+
+        // Makes the transfer writes to the buffer range available to the given graphics stages and accesses
+        public void releaseBuffer(long vkBuffer, long offset, long size, int dstStageMask, int dstAccessMask) {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                VkBufferMemoryBarrier.Buffer barrier = VkBufferMemoryBarrier.callocStack(1, stack)
+                        .sType(VK_STRUCTURE_TYPE_BUFFER_MEMORY_BARRIER)
+                        .srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT)
+                        .srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                        .dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                        .buffer(vkBuffer)
+                        .offset(offset)
+                        .size(size);
+                if (ownershipTransfer) {
+                    barrier.srcQueueFamilyIndex(transferQueue.getQueueFamilyIndex())
+                            .dstQueueFamilyIndex(graphicsQueue.getQueueFamilyIndex());
+                    vkCmdPipelineBarrier(transferCmd.getVkCommandBuffer(), VK_PIPELINE_STAGE_TRANSFER_BIT,
+                            VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, 0, null, barrier, null);
+                    barrier.srcAccessMask(0).dstAccessMask(dstAccessMask);
+                    vkCmdPipelineBarrier(acquireCmd.getVkCommandBuffer(), VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT,
+                            dstStageMask, 0, null, barrier, null);
+                } else {
+                    barrier.dstAccessMask(dstAccessMask);
+                    vkCmdPipelineBarrier(transferCmd.getVkCommandBuffer(), VK_PIPELINE_STAGE_TRANSFER_BIT,
+                            dstStageMask, 0, null, barrier, null);
+                }
+            }
+        }
+
+        // Transitions the image, whose levels have been written in the transfer destination layout, to shader read
+        public void releaseImage(long vkImage, int mipLevels, int dstStageMask, int dstAccessMask) {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                VkImageMemoryBarrier.Buffer barrier = VkImageMemoryBarrier.callocStack(1, stack)
+                        .sType(VK_STRUCTURE_TYPE_IMAGE_MEMORY_BARRIER)
+                        .oldLayout(VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL)
+                        .newLayout(VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL)
+                        .srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT)
+                        .srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                        .dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                        .image(vkImage)
+                        .subresourceRange(it -> it
+                                .aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
+                                .baseMipLevel(0)
+                                .levelCount(mipLevels)
+                                .baseArrayLayer(0)
+                                .layerCount(1));
+                // With an ownership transfer the layout transition is recorded, identically, in both barriers
+                if (ownershipTransfer) {
+                    barrier.srcQueueFamilyIndex(transferQueue.getQueueFamilyIndex())
+                            .dstQueueFamilyIndex(graphicsQueue.getQueueFamilyIndex());
+                    vkCmdPipelineBarrier(transferCmd.getVkCommandBuffer(), VK_PIPELINE_STAGE_TRANSFER_BIT,
+                            VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, 0, null, null, barrier);
+                    barrier.srcAccessMask(0).dstAccessMask(dstAccessMask);
+                    vkCmdPipelineBarrier(acquireCmd.getVkCommandBuffer(), VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT,
+                            dstStageMask, 0, null, null, barrier);
+                } else {
+                    barrier.dstAccessMask(dstAccessMask);
+                    vkCmdPipelineBarrier(transferCmd.getVkCommandBuffer(), VK_PIPELINE_STAGE_TRANSFER_BIT,
+                            dstStageMask, 0, null, null, barrier);
+                }
+            }
+        }
+    }
+
+    private record Upload(UploadTicket ticket, CommandBuffer transferCmd, CommandBuffer acquireCmd,
+                          Semaphore semaphore, Fence fence) {
+
+        void cleanup() {
+            transferCmd.cleanup();
+            if (acquireCmd != null) {
+                acquireCmd.cleanup();
+            }
+            if (semaphore != null) {
+                semaphore.cleanup();
+            }
+            fence.cleanup();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.vulkanb.eng.graph.vk;
+
+import java.nio.*;
+
+public class BcEncoder {
+
+    private static final int BLOCK_PIXELS = 16;
+    // RGBA
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private BcEncoder() {
+        // Utility class
+    }
+
+    private static int distance(int[] rgb, int r, int g, int b) {
+        int dr = rgb[0] - r;
+        int dg = rgb[1] - g;
+        int db = rgb[2] - b;
+        return dr * dr + dg * dg + db * db;
+    }
+
+    private static ByteBuffer encode(ByteBuffer rgba, int width, int height, boolean alpha) {
+        int blocksX = (width + 3) / 4;
+        int blocksY = (height + 3) / 4;
+        ByteBuffer dst = ByteBuffer.allocate(blocksX * blocksY * (alpha ? 16 : 8)).order(ByteOrder.LITTLE_ENDIAN);
+        int[] block = new int[BLOCK_PIXELS * BYTES_PER_PIXEL];
+        for (int by = 0; by < blocksY; by++) {
+            for (int bx = 0; bx < blocksX; bx++) {
+                // Blocks that go past the edge of the image repeat the last row or column
+                for (int i = 0; i < BLOCK_PIXELS; i++) {
+                    int x = Math.min(bx * 4 + (i & 3), width - 1);
+                    int y = Math.min(by * 4 + (i >> 2), height - 1);
+                    int pos = (y * width + x) * BYTES_PER_PIXEL;
+                    for (int c = 0; c < BYTES_PER_PIXEL; c++) {
+                        block[i * BYTES_PER_PIXEL + c] = rgba.get(pos + c) & 0xFF;
+                    }
+                }
+                if (alpha) {
+                    encodeAlphaBlock(block, dst);
+                }
+                encodeColorBlock(block, dst);
+            }
+        }
+        return dst.flip();
+    }
+
+    private static void encodeAlphaBlock(int[] block, ByteBuffer dst) {
+        int minAlpha = 255;
+        int maxAlpha = 0;
+        for (int i = 0; i < BLOCK_PIXELS; i++) {
+            int a = block[i * BYTES_PER_PIXEL + 3];
+            minAlpha = Math.min(minAlpha, a);
+            maxAlpha = Math.max(maxAlpha, a);
+        }
+
+        // With alpha0 > alpha1 the palette interpolates six values between both end points
+        int[] palette = new int[8];
+        palette[0] = maxAlpha;
+        palette[1] = minAlpha;
+        for (int i = 1; i < 7; i++) {
+            palette[i + 1] = ((7 - i) * maxAlpha + i * minAlpha + 3) / 7;
+        }
+
+        long indices = 0;
+        if (maxAlpha > minAlpha) {
+            for (int i = 0; i < BLOCK_PIXELS; i++) {
+                int a = block[i * BYTES_PER_PIXEL + 3];
+                int bestIndex = 0;
+                int bestDistance = Integer.MAX_VALUE;
+                for (int j = 0; j < palette.length; j++) {
+                    int d = Math.abs(palette[j] - a);
+                    if (d < bestDistance) {
+                        bestDistance = d;
+                        bestIndex = j;
+                    }
+                }
+                indices |= (long) bestIndex << (3 * i);
+            }
+        }
+
+        dst.put((byte) maxAlpha).put((byte) minAlpha);
+        for (int i = 0; i < 6; i++) {
+            dst.put((byte) (indices >>> (8 * i)));
+        }
+    }
+
+    public static ByteBuffer encodeBC1(ByteBuffer rgba, int width, int height) {
+        return encode(rgba, width, height, false);
+    }
+
+    public static ByteBuffer encodeBC3(ByteBuffer rgba, int width, int height) {
+        return encode(rgba, width, height, true);
+    }
+
+    private static void encodeColorBlock(int[] block, ByteBuffer dst) {
+        int[] min = {255, 255, 255};
+        int[] max = {0, 0, 0};
+        for (int i = 0; i < BLOCK_PIXELS; i++) {
+            for (int c = 0; c < 3; c++) {
+                int value = block[i * BYTES_PER_PIXEL + c];
+                min[c] = Math.min(min[c], value);
+                max[c] = Math.max(max[c], value);
+            }
+        }
+        // Move the end points of the bounding box slightly inwards, which reduces the error of the interpolated colors
+        for (int c = 0; c < 3; c++) {
+            int inset = (max[c] - min[c]) >> 4;
+            min[c] = Math.min(255, min[c] + inset);
+            max[c] = Math.max(0, max[c] - inset);
+        }
+
+        int color0 = to565(max);
+        int color1 = to565(min);
+        if (color0 < color1) {
+            int tmp = color0;
+            color0 = color1;
+            color1 = tmp;
+        }
+
+        int indices = 0;
+        if (color0 != color1) {
+            int[] c0 = from565(color0);
+            int[] c1 = from565(color1);
+            int[][] palette = {
+                    c0,
+                    c1,
+                    {(2 * c0[0] + c1[0]) / 3, (2 * c0[1] + c1[1]) / 3, (2 * c0[2] + c1[2]) / 3},
+                    {(c0[0] + 2 * c1[0]) / 3, (c0[1] + 2 * c1[1]) / 3, (c0[2] + 2 * c1[2]) / 3},
+            };
+            for (int i = 0; i < BLOCK_PIXELS; i++) {
+                int r = block[i * BYTES_PER_PIXEL];
+                int g = block[i * BYTES_PER_PIXEL + 1];
+                int b = block[i * BYTES_PER_PIXEL + 2];
+                int bestIndex = 0;
+                int bestDistance = Integer.MAX_VALUE;
+                for (int j = 0; j < palette.length; j++) {
+                    int d = distance(palette[j], r, g, b);
+                    if (d < bestDistance) {
+                        bestDistance = d;
+                        bestIndex = j;
+                    }
+                }
+                indices |= bestIndex << (2 * i);
+            }
+        }
+
+        dst.putShort((short) color0).putShort((short) color1).putInt(indices);
+    }
+
+    private static int[] from565(int color) {
+        int r = (color >> 11) & 0x1F;
+        int g = (color >> 5) & 0x3F;
+        int b = color & 0x1F;
+        return new int[]{(r << 3) | (r >> 2), (g << 2) | (g >> 4), (b << 3) | (b >> 2)};
+    }
+
+    public static boolean hasAlpha(ByteBuffer rgba, int width, int height) {
+        int numPixels = width * height;
+        for (int i = 0; i < numPixels; i++) {
+            if ((rgba.get(i * BYTES_PER_PIXEL + 3) & 0xFF) != 255) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int to565(int[] rgb) {
+        return ((rgb[0] * 31 + 127) / 255) << 11 | ((rgb[1] * 63 + 127) / 255) << 5 | (rgb[2] * 31 + 127) / 255;
+    }
+}
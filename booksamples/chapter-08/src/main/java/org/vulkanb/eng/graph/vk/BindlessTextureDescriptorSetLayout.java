@@ -0,0 +1,49 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.nio.LongBuffer;
+
+import static org.lwjgl.vulkan.EXTDescriptorIndexing.*;
+import static org.lwjgl.vulkan.VK11.*;
+import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
+
+public class BindlessTextureDescriptorSetLayout extends DescriptorSetLayout {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    public BindlessTextureDescriptorSetLayout(Device device, int binding, int maxTextures) {
+        super(device);
+
+        LOGGER.debug("Creating bindless texture descriptor set layout for [{}] textures", maxTextures);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkDescriptorSetLayoutBinding.Buffer layoutBindings = VkDescriptorSetLayoutBinding.callocStack(1, stack)
+                    .binding(binding)
+                    .descriptorType(VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER)
+                    .descriptorCount(maxTextures)
+                    .stageFlags(VK_SHADER_STAGE_FRAGMENT_BIT);
+
+            VkDescriptorSetLayoutBindingFlagsCreateInfoEXT bindingFlags =
+                    VkDescriptorSetLayoutBindingFlagsCreateInfoEXT.callocStack(stack)
+                            .sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_LAYOUT_BINDING_FLAGS_CREATE_INFO_EXT)
+                            .pBindingFlags(stack.ints(VK_DESCRIPTOR_BINDING_PARTIALLY_BOUND_BIT_EXT |
+                                    VK_DESCRIPTOR_BINDING_UPDATE_AFTER_BIND_BIT_EXT |
+                                    VK_DESCRIPTOR_BINDING_UPDATE_UNUSED_WHILE_PENDING_BIT_EXT));
+
+            VkDescriptorSetLayoutCreateInfo layoutInfo = VkDescriptorSetLayoutCreateInfo.callocStack(stack)
+                    .sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_LAYOUT_CREATE_INFO)
+                    .pNext(bindingFlags.address())
+                    .flags(VK_DESCRIPTOR_SET_LAYOUT_CREATE_UPDATE_AFTER_BIND_POOL_BIT_EXT)
+                    .pBindings(layoutBindings);
+
+            LongBuffer lp = stack.mallocLong(1);
+            vkCheck(vkCreateDescriptorSetLayout(device.getVkDevice(), layoutInfo, null, lp),
+                    "Failed to create bindless texture descriptor set layout");
+            super.vkDescriptorLayout = lp.get(0);
+            setLayoutInfo(layoutInfo.flags(), layoutBindings, bindingFlags.pBindingFlags());
+            addDescriptorTypeCount(VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER, maxTextures);
+        }
+    }
+}
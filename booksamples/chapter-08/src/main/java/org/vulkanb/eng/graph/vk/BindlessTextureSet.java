@@ -0,0 +1,96 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.nio.LongBuffer;
+import java.util.*;
+
+import static org.lwjgl.vulkan.EXTDescriptorIndexing.VK_DESCRIPTOR_POOL_CREATE_UPDATE_AFTER_BIND_BIT_EXT;
+import static org.lwjgl.vulkan.VK11.*;
+import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
+
+// A single descriptor set holding an array with all the textures, each draw selects its texture by index
+public class BindlessTextureSet {
+
+    // Must match the size of the array declared in the bindless fragment shader
+    public static final int MAX_TEXTURES = 1024;
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final int binding;
+    private final DescriptorPool descriptorPool;
+    private final Device device;
+    private final Deque<Integer> freeIndices;
+    private final long vkDescriptorSet;
+    private int nextIndex;
+
+    public BindlessTextureSet(Device device, BindlessTextureDescriptorSetLayout descriptorSetLayout, int binding) {
+        LOGGER.debug("Creating bindless texture set");
+        this.device = device;
+        this.binding = binding;
+        freeIndices = new ArrayDeque<>();
+        descriptorPool = new DescriptorPool(device, descriptorSetLayout.getDescriptorTypeCounts(), 1,
+                VK_DESCRIPTOR_POOL_CREATE_UPDATE_AFTER_BIND_BIT_EXT);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkDescriptorSetAllocateInfo allocInfo = VkDescriptorSetAllocateInfo.callocStack(stack)
+                    .sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_ALLOCATE_INFO)
+                    .descriptorPool(descriptorPool.getVkDescriptorPool())
+                    .pSetLayouts(stack.longs(descriptorSetLayout.getVkDescriptorLayout()));
+
+            LongBuffer pDescriptorSet = stack.mallocLong(1);
+            vkCheck(vkAllocateDescriptorSets(device.getVkDevice(), allocInfo, pDescriptorSet),
+                    "Failed to create bindless texture descriptor set");
+            vkDescriptorSet = pDescriptorSet.get(0);
+        }
+    }
+
+    public static boolean isSupported(Device device) {
+        return device.isDescriptorIndexing() && device.isSampledImageArrayDynamicIndexing() &&
+                device.getMaxUpdateAfterBindSamplers() >= MAX_TEXTURES;
+    }
+
+    public int addTexture(Texture texture, TextureSampler textureSampler) {
+        int index;
+        if (!freeIndices.isEmpty()) {
+            index = freeIndices.pop();
+        } else if (nextIndex < MAX_TEXTURES) {
+            index = nextIndex++;
+        } else {
+            throw new RuntimeException("Bindless texture array is full, max textures [" + MAX_TEXTURES + "]");
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkDescriptorImageInfo.Buffer imageInfo = VkDescriptorImageInfo.callocStack(1, stack)
+                    .imageLayout(VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL)
+                    .imageView(texture.getImageView().getVkImageView())
+                    .sampler(textureSampler.getVkSampler());
+
+            VkWriteDescriptorSet.Buffer descrBuffer = VkWriteDescriptorSet.callocStack(1, stack);
+            descrBuffer.get(0)
+                    .sType(VK_STRUCTURE_TYPE_WRITE_DESCRIPTOR_SET)
+                    .dstSet(vkDescriptorSet)
+                    .dstBinding(binding)
+                    .dstArrayElement(index)
+                    .descriptorType(VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER)
+                    .descriptorCount(1)
+                    .pImageInfo(imageInfo);
+
+            vkUpdateDescriptorSets(device.getVkDevice(), descrBuffer, null);
+        }
+        return index;
+    }
+
+    public void cleanup() {
+        LOGGER.debug("Destroying bindless texture set");
+        descriptorPool.cleanup();
+    }
+
+    public long getVkDescriptorSet() {
+        return vkDescriptorSet;
+    }
+
+    // The slot must not be used by any frame in flight, it is reused by the next texture added
+    public void removeTexture(int index) {
+        freeIndices.push(index);
+    }
+}
@@ -35,12 +35,25 @@ public class CommandBuffer {
     }
 
     public void beginRecording() {
+        beginRecording(null);
+    }
+
+    public void beginRecording(InheritanceInfo inheritanceInfo) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             VkCommandBufferBeginInfo cmdBufInfo = VkCommandBufferBeginInfo.callocStack(stack)
                     .sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
-            if (oneTimeSubmit) {
-                cmdBufInfo.flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
+            int flags = oneTimeSubmit ? VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT : 0;
+            if (inheritanceInfo != null) {
+                // Secondary command buffers executed entirely inside a render pass
+                VkCommandBufferInheritanceInfo vkInheritanceInfo = VkCommandBufferInheritanceInfo.callocStack(stack)
+                        .sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_INHERITANCE_INFO)
+                        .renderPass(inheritanceInfo.vkRenderPass())
+                        .subpass(inheritanceInfo.subPass())
+                        .framebuffer(inheritanceInfo.vkFrameBuffer());
+                cmdBufInfo.pInheritanceInfo(vkInheritanceInfo);
+                flags |= VK_COMMAND_BUFFER_USAGE_RENDER_PASS_CONTINUE_BIT;
             }
+            cmdBufInfo.flags(flags);
             vkCheck(vkBeginCommandBuffer(vkCommandBuffer, cmdBufInfo), "Failed to begin command buffer");
         }
     }
@@ -55,6 +68,10 @@ public class CommandBuffer {
         vkCheck(vkEndCommandBuffer(vkCommandBuffer), "Failed to end command buffer");
     }
 
+    public CommandPool getCommandPool() {
+        return commandPool;
+    }
+
     public VkCommandBuffer getVkCommandBuffer() {
         return vkCommandBuffer;
     }
@@ -62,4 +79,7 @@ public class CommandBuffer {
     public void reset() {
         vkResetCommandBuffer(vkCommandBuffer, VK_COMMAND_BUFFER_RESET_RELEASE_RESOURCES_BIT);
     }
+
+    public record InheritanceInfo(long vkRenderPass, long vkFrameBuffer, int subPass) {
+    }
 }
@@ -12,12 +12,14 @@ import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
 public class CommandPool {
     private static final Logger LOGGER = LogManager.getLogger();
     private Device device;
+    private int queueFamilyIndex;
     private long vkCommandPool;
 
     public CommandPool(Device device, int queueFamilyIndex) {
         LOGGER.debug("Creating Vulkan CommandPool");
 
         this.device = device;
+        this.queueFamilyIndex = queueFamilyIndex;
         try (MemoryStack stack = MemoryStack.stackPush()) {
             VkCommandPoolCreateInfo cmdPoolInfo = VkCommandPoolCreateInfo.callocStack(stack)
                     .sType(VK_STRUCTURE_TYPE_COMMAND_POOL_CREATE_INFO)
@@ -40,6 +42,10 @@ public class CommandPool {
         return device;
     }
 
+    public int getQueueFamilyIndex() {
+        return queueFamilyIndex;
+    }
+
     public long getVkCommandPool() {
         return vkCommandPool;
     }
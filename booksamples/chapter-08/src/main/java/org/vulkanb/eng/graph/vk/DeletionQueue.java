@@ -0,0 +1,38 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+
+import java.util.*;
+
+// Defers the destruction of GPU resources until the frames that may be using them have completed. Resources are
+// tagged with the frame counter at the time they stop being used, frames are retired in order, so the queue is FIFO
+public class DeletionQueue {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final Deque<Deletion> deletions;
+
+    public DeletionQueue() {
+        deletions = new ArrayDeque<>();
+    }
+
+    public synchronized void defer(long frame, Runnable destroyer) {
+        deletions.addLast(new Deletion(frame, destroyer));
+    }
+
+    // Destroys the resources released up to the given frame, which must no longer be in flight
+    public synchronized void flush(long completedFrame) {
+        while (!deletions.isEmpty() && deletions.peekFirst().frame() <= completedFrame) {
+            deletions.removeFirst().destroyer().run();
+        }
+    }
+
+    // The device must be idle
+    public synchronized void flushAll() {
+        LOGGER.debug("Flushing [{}] pending deletions", deletions.size());
+        deletions.forEach(deletion -> deletion.destroyer().run());
+        deletions.clear();
+    }
+
+    private record Deletion(long frame, Runnable destroyer) {
+    }
+}
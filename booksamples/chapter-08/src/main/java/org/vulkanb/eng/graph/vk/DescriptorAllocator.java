@@ -0,0 +1,110 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDescriptorSetAllocateInfo;
+
+import java.nio.LongBuffer;
+import java.util.*;
+
+import static org.lwjgl.vulkan.VK11.*;
+import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
+
+public class DescriptorAllocator {
+
+    private static final int INITIAL_SETS_PER_POOL = 32;
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAX_SETS_PER_POOL = 4096;
+    private final Device device;
+    // Descriptor sets given back, by layout, which can be reused without going through the pools
+    private final Map<Long, Deque<Long>> freeSets;
+    // Number of descriptors of each type requested so far, used to size new pools
+    private final Map<Integer, Long> observedTypeCounts;
+    private final List<DescriptorPool> pools;
+    private long observedSets;
+    private int poolIndex;
+    private int setsPerPool;
+
+    public DescriptorAllocator(Device device) {
+        LOGGER.debug("Creating descriptor allocator");
+        this.device = device;
+        freeSets = new HashMap<>();
+        observedTypeCounts = new HashMap<>();
+        pools = new ArrayList<>();
+        setsPerPool = INITIAL_SETS_PER_POOL;
+    }
+
+    public long allocate(DescriptorSetLayout descriptorSetLayout) {
+        long layout = descriptorSetLayout.getVkDescriptorLayout();
+        Deque<Long> layoutFreeSets = freeSets.get(layout);
+        if (layoutFreeSets != null && !layoutFreeSets.isEmpty()) {
+            return layoutFreeSets.pop();
+        }
+
+        observedSets++;
+        for (Map.Entry<Integer, Integer> entry : descriptorSetLayout.getDescriptorTypeCounts().entrySet()) {
+            observedTypeCounts.merge(entry.getKey(), (long) entry.getValue(), Long::sum);
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer pDescriptorSet = stack.mallocLong(1);
+            int result = poolIndex < pools.size() ?
+                    allocate(stack, pools.get(poolIndex), layout, pDescriptorSet) : VK_ERROR_OUT_OF_POOL_MEMORY;
+            while (result == VK_ERROR_OUT_OF_POOL_MEMORY || result == VK_ERROR_FRAGMENTED_POOL) {
+                // Exhausted pools are kept, their sets are still in use. Move to the next one (there may be some
+                // left after a reset) or chain a new one
+                poolIndex = Math.min(poolIndex + 1, pools.size());
+                if (poolIndex == pools.size()) {
+                    pools.add(createPool(descriptorSetLayout));
+                    result = allocate(stack, pools.get(poolIndex), layout, pDescriptorSet);
+                    break;
+                }
+                result = allocate(stack, pools.get(poolIndex), layout, pDescriptorSet);
+            }
+            vkCheck(result, "Failed to allocate descriptor set");
+            return pDescriptorSet.get(0);
+        }
+    }
+
+    private int allocate(MemoryStack stack, DescriptorPool descriptorPool, long layout, LongBuffer pDescriptorSet) {
+        VkDescriptorSetAllocateInfo allocInfo = VkDescriptorSetAllocateInfo.callocStack(stack)
+                .sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_ALLOCATE_INFO)
+                .descriptorPool(descriptorPool.getVkDescriptorPool())
+                .pSetLayouts(stack.longs(layout));
+        return vkAllocateDescriptorSets(device.getVkDevice(), allocInfo, pDescriptorSet);
+    }
+
+    public void cleanup() {
+        LOGGER.debug("Destroying descriptor allocator");
+        pools.forEach(DescriptorPool::cleanup);
+        pools.clear();
+        freeSets.clear();
+    }
+
+    private DescriptorPool createPool(DescriptorSetLayout descriptorSetLayout) {
+        // Scale the average number of descriptors per set seen so far to the size of the new pool, it must at least
+        // hold the set being allocated
+        Map<Integer, Integer> descriptorTypeCounts = new HashMap<>(descriptorSetLayout.getDescriptorTypeCounts());
+        for (Map.Entry<Integer, Long> entry : observedTypeCounts.entrySet()) {
+            long count = (entry.getValue() * setsPerPool + observedSets - 1) / observedSets;
+            descriptorTypeCounts.merge(entry.getKey(), (int) count, Math::max);
+        }
+        DescriptorPool descriptorPool = new DescriptorPool(device, descriptorTypeCounts, setsPerPool);
+        setsPerPool = Math.min(MAX_SETS_PER_POOL, setsPerPool * 2);
+        return descriptorPool;
+    }
+
+    // The set must not be in use by any frame in flight. It is handed out again on a later allocation for the same
+    // layout, which must then write all its descriptors
+    public void free(DescriptorSetLayout descriptorSetLayout, long vkDescriptorSet) {
+        freeSets.computeIfAbsent(descriptorSetLayout.getVkDescriptorLayout(), k -> new ArrayDeque<>())
+                .push(vkDescriptorSet);
+    }
+
+    // Invalidates all the descriptor sets allocated so far
+    public void reset() {
+        pools.forEach(DescriptorPool::reset);
+        poolIndex = 0;
+        freeSets.clear();
+    }
+}
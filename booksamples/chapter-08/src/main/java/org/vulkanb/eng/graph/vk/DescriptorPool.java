@@ -16,32 +16,29 @@ public class DescriptorPool {
     private Device device;
     private long vkDescriptorPool;
 
-    public DescriptorPool(Device device, int numStaticSets, int numDynamicSets) {
-        LOGGER.debug("Creating descriptor pool");
+    public DescriptorPool(Device device, Map<Integer, Integer> descriptorTypeCounts, int maxSets) {
+        this(device, descriptorTypeCounts, maxSets, 0);
+    }
+
+    public DescriptorPool(Device device, Map<Integer, Integer> descriptorTypeCounts, int maxSets, int flags) {
+        LOGGER.debug("Creating descriptor pool, max sets [{}], descriptor counts {}", maxSets, descriptorTypeCounts);
         this.device = device;
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            List<Integer> typeList = new ArrayList<>();
-            List<Integer> countList = new ArrayList<>();
-            if (numStaticSets > 0) {
-                typeList.add(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER);
-                countList.add(numStaticSets);
-            }
-            if (numDynamicSets > 0) {
-                typeList.add(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC);
-                countList.add(numDynamicSets);
-            }
-            int numTypes = typeList.size();
+            int numTypes = descriptorTypeCounts.size();
             VkDescriptorPoolSize.Buffer typeCounts = VkDescriptorPoolSize.callocStack(numTypes, stack);
-            for (int i = 0; i < numTypes; i++) {
+            int i = 0;
+            for (Map.Entry<Integer, Integer> entry : descriptorTypeCounts.entrySet()) {
                 typeCounts.get(i)
-                        .type(typeList.get(i))
-                        .descriptorCount(countList.get(i));
+                        .type(entry.getKey())
+                        .descriptorCount(entry.getValue());
+                i++;
             }
 
             VkDescriptorPoolCreateInfo descriptorPoolInfo = VkDescriptorPoolCreateInfo.callocStack(stack)
                     .sType(VK_STRUCTURE_TYPE_DESCRIPTOR_POOL_CREATE_INFO)
+                    .flags(flags)
                     .pPoolSizes(typeCounts)
-                    .maxSets(numStaticSets + numDynamicSets);
+                    .maxSets(maxSets);
 
             LongBuffer pDescriptorPool = stack.mallocLong(1);
             vkCheck(vkCreateDescriptorPool(device.getVkDevice(), descriptorPoolInfo, null, pDescriptorPool),
@@ -62,4 +59,8 @@ public class DescriptorPool {
     public long getVkDescriptorPool() {
         return vkDescriptorPool;
     }
+
+    public void reset() {
+        vkCheck(vkResetDescriptorPool(device.getVkDevice(), vkDescriptorPool, 0), "Failed to reset descriptor pool");
+    }
 }
\ No newline at end of file
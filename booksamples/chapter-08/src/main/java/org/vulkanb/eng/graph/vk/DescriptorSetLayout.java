@@ -1,6 +1,10 @@
 package org.vulkanb.eng.graph.vk;
 
 import org.apache.logging.log4j.*;
+import org.lwjgl.vulkan.VkDescriptorSetLayoutBinding;
+
+import java.nio.IntBuffer;
+import java.util.*;
 
 import static org.lwjgl.vulkan.VK11.vkDestroyDescriptorSetLayout;
 
@@ -8,10 +12,19 @@ public abstract class DescriptorSetLayout {
 
     private static final Logger LOGGER = LogManager.getLogger();
     protected long vkDescriptorLayout;
+    private Map<Integer, Integer> descriptorTypeCounts;
     private Device device;
+    private List<LayoutBinding> layoutBindings;
+    private int layoutFlags;
 
     public DescriptorSetLayout(Device device) {
         this.device = device;
+        descriptorTypeCounts = new HashMap<>();
+        layoutBindings = Collections.emptyList();
+    }
+
+    protected void addDescriptorTypeCount(int descriptorType, int count) {
+        descriptorTypeCounts.merge(descriptorType, count, Integer::sum);
     }
 
     public void cleanup() {
@@ -19,7 +32,36 @@ public abstract class DescriptorSetLayout {
         vkDestroyDescriptorSetLayout(device.getVkDevice(), vkDescriptorLayout, null);
     }
 
+    public Map<Integer, Integer> getDescriptorTypeCounts() {
+        return descriptorTypeCounts;
+    }
+
+    // Describes the layout contents, so equivalent layouts can be recognized without comparing their handles
+    public List<LayoutBinding> getLayoutBindings() {
+        return layoutBindings;
+    }
+
+    public int getLayoutFlags() {
+        return layoutFlags;
+    }
+
     public long getVkDescriptorLayout() {
         return vkDescriptorLayout;
     }
+
+    // Must be called by subclasses with the same values used to create the layout, binding flags may be null
+    protected void setLayoutInfo(int flags, VkDescriptorSetLayoutBinding.Buffer bindings, IntBuffer bindingFlags) {
+        List<LayoutBinding> result = new ArrayList<>();
+        for (int i = 0; i < bindings.remaining(); i++) {
+            VkDescriptorSetLayoutBinding binding = bindings.get(i);
+            result.add(new LayoutBinding(binding.binding(), binding.descriptorType(), binding.descriptorCount(),
+                    binding.stageFlags(), bindingFlags != null ? bindingFlags.get(i) : 0));
+        }
+        layoutFlags = flags;
+        layoutBindings = Collections.unmodifiableList(result);
+    }
+
+    public record LayoutBinding(int binding, int descriptorType, int descriptorCount, int stageFlags,
+                                int bindingFlags) {
+    }
 }
@@ -6,6 +6,7 @@ import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 
 import java.nio.FloatBuffer;
+import java.util.*;
 
 import static org.lwjgl.vulkan.VK11.*;
 import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
@@ -13,27 +14,70 @@ import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
 public class Device {
 
     private static final Logger LOGGER = LogManager.getLogger();
+    private boolean descriptorIndexing;
+    private boolean drawIndirectCount;
+    private boolean drawIndirectFirstInstance;
+    private int maxUpdateAfterBindSamplers;
+    private MemoryAllocator memoryAllocator;
+    private boolean multiDrawIndirect;
     private PhysicalDevice physicalDevice;
+    private boolean sampledImageArrayDynamicIndexing;
     private boolean samplerAnisotropy;
+    private boolean textureCompressionBC;
     private VkDevice vkDevice;
 
-    public Device(PhysicalDevice physicalDevice) {
+    public Device(Instance instance, PhysicalDevice physicalDevice) {
         LOGGER.debug("Creating device");
 
         this.physicalDevice = physicalDevice;
         try (MemoryStack stack = MemoryStack.stackPush()) {
 
+            // Descriptor indexing is optional, it is used for bindless textures when available
+            VkPhysicalDeviceDescriptorIndexingFeaturesEXT indexingFeatures = null;
+            if (physicalDevice.hasDeviceExtension(EXTDescriptorIndexing.VK_EXT_DESCRIPTOR_INDEXING_EXTENSION_NAME)) {
+                indexingFeatures = queryDescriptorIndexing(stack);
+            }
+
             // Define required extensions
-            PointerBuffer requiredExtensions = stack.mallocPointer(1);
-            requiredExtensions.put(0, stack.ASCII(KHRSwapchain.VK_KHR_SWAPCHAIN_EXTENSION_NAME));
+            List<String> extensions = new ArrayList<>();
+            extensions.add(KHRSwapchain.VK_KHR_SWAPCHAIN_EXTENSION_NAME);
+            if (descriptorIndexing) {
+                extensions.add(EXTDescriptorIndexing.VK_EXT_DESCRIPTOR_INDEXING_EXTENSION_NAME);
+            }
+            drawIndirectCount = physicalDevice.hasDeviceExtension(
+                    KHRDrawIndirectCount.VK_KHR_DRAW_INDIRECT_COUNT_EXTENSION_NAME);
+            if (drawIndirectCount) {
+                extensions.add(KHRDrawIndirectCount.VK_KHR_DRAW_INDIRECT_COUNT_EXTENSION_NAME);
+            }
+            PointerBuffer requiredExtensions = stack.mallocPointer(extensions.size());
+            for (int i = 0; i < extensions.size(); i++) {
+                requiredExtensions.put(i, stack.ASCII(extensions.get(i)));
+            }
 
             // Set up required features
             VkPhysicalDeviceFeatures features = VkPhysicalDeviceFeatures.callocStack(stack);
             VkPhysicalDeviceFeatures supportedFeatures = this.physicalDevice.getVkPhysicalDeviceFeatures();
+            // Needed to select textures from an array with a non constant index, as the bindless shader does
+            sampledImageArrayDynamicIndexing = supportedFeatures.shaderSampledImageArrayDynamicIndexing();
+            if (sampledImageArrayDynamicIndexing) {
+                features.shaderSampledImageArrayDynamicIndexing(true);
+            }
             samplerAnisotropy = supportedFeatures.samplerAnisotropy();
             if (samplerAnisotropy) {
                 features.samplerAnisotropy(true);
             }
+            textureCompressionBC = supportedFeatures.textureCompressionBC();
+            if (textureCompressionBC) {
+                features.textureCompressionBC(true);
+            }
+            multiDrawIndirect = supportedFeatures.multiDrawIndirect();
+            if (multiDrawIndirect) {
+                features.multiDrawIndirect(true);
+            }
+            drawIndirectFirstInstance = supportedFeatures.drawIndirectFirstInstance();
+            if (drawIndirectFirstInstance) {
+                features.drawIndirectFirstInstance(true);
+            }
 
             // Enable all the queue families
             VkQueueFamilyProperties.Buffer queuePropsBuff = physicalDevice.getVkQueueFamilyProps();
@@ -52,19 +96,33 @@ public class Device {
                     .ppEnabledExtensionNames(requiredExtensions)
                     .pEnabledFeatures(features)
                     .pQueueCreateInfos(queueCreationInfoBuf);
+            if (descriptorIndexing) {
+                deviceCreateInfo.pNext(indexingFeatures.address());
+            }
 
             PointerBuffer pp = stack.mallocPointer(1);
             vkCheck(vkCreateDevice(physicalDevice.getVkPhysicalDevice(), deviceCreateInfo, null, pp),
                     "Failed to create device");
             vkDevice = new VkDevice(pp.get(0), physicalDevice.getVkPhysicalDevice(), deviceCreateInfo);
+
+            memoryAllocator = new MemoryAllocator(instance, physicalDevice, vkDevice);
         }
     }
 
     public void cleanup() {
         LOGGER.debug("Destroying Vulkan device");
+        memoryAllocator.cleanup();
         vkDestroyDevice(vkDevice, null);
     }
 
+    public MemoryAllocator getMemoryAllocator() {
+        return memoryAllocator;
+    }
+
+    public int getMaxUpdateAfterBindSamplers() {
+        return maxUpdateAfterBindSamplers;
+    }
+
     public PhysicalDevice getPhysicalDevice() {
         return physicalDevice;
     }
@@ -73,10 +131,68 @@ public class Device {
         return vkDevice;
     }
 
+    public boolean isDescriptorIndexing() {
+        return descriptorIndexing;
+    }
+
+    public boolean isDrawIndirectCount() {
+        return drawIndirectCount;
+    }
+
+    public boolean isDrawIndirectFirstInstance() {
+        return drawIndirectFirstInstance;
+    }
+
+    public boolean isMultiDrawIndirect() {
+        return multiDrawIndirect;
+    }
+
+    public boolean isSampledImageArrayDynamicIndexing() {
+        return sampledImageArrayDynamicIndexing;
+    }
+
     public boolean isSamplerAnisotropy() {
         return samplerAnisotropy;
     }
 
+    public boolean isTextureCompressionBC() {
+        return textureCompressionBC;
+    }
+
+    private VkPhysicalDeviceDescriptorIndexingFeaturesEXT queryDescriptorIndexing(MemoryStack stack) {
+        VkPhysicalDevice vkPhysicalDevice = physicalDevice.getVkPhysicalDevice();
+        VkPhysicalDeviceDescriptorIndexingFeaturesEXT supportedIndexingFeatures =
+                VkPhysicalDeviceDescriptorIndexingFeaturesEXT.callocStack(stack)
+                        .sType(EXTDescriptorIndexing.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_DESCRIPTOR_INDEXING_FEATURES_EXT);
+        VkPhysicalDeviceFeatures2 features2 = VkPhysicalDeviceFeatures2.callocStack(stack)
+                .sType(VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_FEATURES_2)
+                .pNext(supportedIndexingFeatures.address());
+        vkGetPhysicalDeviceFeatures2(vkPhysicalDevice, features2);
+
+        VkPhysicalDeviceDescriptorIndexingPropertiesEXT indexingProperties =
+                VkPhysicalDeviceDescriptorIndexingPropertiesEXT.callocStack(stack)
+                        .sType(EXTDescriptorIndexing.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_DESCRIPTOR_INDEXING_PROPERTIES_EXT);
+        VkPhysicalDeviceProperties2 properties2 = VkPhysicalDeviceProperties2.callocStack(stack)
+                .sType(VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_PROPERTIES_2)
+                .pNext(indexingProperties.address());
+        vkGetPhysicalDeviceProperties2(vkPhysicalDevice, properties2);
+        maxUpdateAfterBindSamplers = Math.min(indexingProperties.maxPerStageDescriptorUpdateAfterBindSamplers(),
+                indexingProperties.maxPerStageDescriptorUpdateAfterBindSampledImages());
+
+        // Textures are added to the array while previous frames, which do not use them, may be still in flight
+        descriptorIndexing = supportedIndexingFeatures.descriptorBindingPartiallyBound() &&
+                supportedIndexingFeatures.descriptorBindingSampledImageUpdateAfterBind() &&
+                supportedIndexingFeatures.descriptorBindingUpdateUnusedWhilePending();
+        LOGGER.debug("Descriptor indexing supported [{}], max update after bind samplers [{}]", descriptorIndexing,
+                maxUpdateAfterBindSamplers);
+
+        return VkPhysicalDeviceDescriptorIndexingFeaturesEXT.callocStack(stack)
+                .sType(EXTDescriptorIndexing.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_DESCRIPTOR_INDEXING_FEATURES_EXT)
+                .descriptorBindingPartiallyBound(true)
+                .descriptorBindingSampledImageUpdateAfterBind(true)
+                .descriptorBindingUpdateUnusedWhilePending(true);
+    }
+
     public void waitIdle() {
         vkDeviceWaitIdle(vkDevice);
     }
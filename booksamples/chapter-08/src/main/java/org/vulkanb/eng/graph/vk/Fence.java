@@ -39,6 +39,10 @@ public class Fence {
         return vkFence;
     }
 
+    public boolean isSignaled() {
+        return vkGetFenceStatus(device.getVkDevice(), vkFence) == VK_SUCCESS;
+    }
+
     public void reset() {
         vkResetFences(device.getVkDevice(), vkFence);
     }
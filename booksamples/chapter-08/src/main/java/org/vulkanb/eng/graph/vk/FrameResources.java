@@ -0,0 +1,41 @@
+package org.vulkanb.eng.graph.vk;
+
+// Synchronization objects and command buffer of a frame in flight. Frames are used as a ring, so the CPU can build a
+// frame while the GPU still processes the previous ones, independently of the number of swap chain images
+public class FrameResources {
+
+    private final CommandBuffer commandBuffer;
+    private final Fence fence;
+    private final Semaphore imgAcquisitionSemaphore;
+    private final int index;
+
+    public FrameResources(CommandPool commandPool, int index) {
+        this.index = index;
+        Device device = commandPool.getDevice();
+        commandBuffer = new CommandBuffer(commandPool, true, false);
+        fence = new Fence(device, true);
+        imgAcquisitionSemaphore = new Semaphore(device);
+    }
+
+    public void cleanup() {
+        commandBuffer.cleanup();
+        fence.cleanup();
+        imgAcquisitionSemaphore.cleanup();
+    }
+
+    public CommandBuffer getCommandBuffer() {
+        return commandBuffer;
+    }
+
+    public Fence getFence() {
+        return fence;
+    }
+
+    public Semaphore getImgAcquisitionSemaphore() {
+        return imgAcquisitionSemaphore;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+}
@@ -0,0 +1,109 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+
+import static org.lwjgl.util.vma.Vma.VMA_MEMORY_USAGE_GPU_ONLY;
+import static org.lwjgl.vulkan.VK11.*;
+
+public class GeometryArena {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final RangeAllocator indicesAllocator;
+    private final VulkanBuffer indicesBuffer;
+    private final RangeAllocator verticesAllocator;
+    private final VulkanBuffer verticesBuffer;
+
+    public GeometryArena(Device device, long verticesSize, long indicesSize) {
+        LOGGER.debug("Creating geometry arena, vertices size [{}], indices size [{}]", verticesSize, indicesSize);
+        long maxVertices = verticesSize / VertexBufferStructure.SIZE_IN_BYTES;
+        long maxIndices = indicesSize / GraphConstants.INT_LENGTH;
+        verticesBuffer = new VulkanBuffer(device, maxVertices * VertexBufferStructure.SIZE_IN_BYTES,
+                VK_BUFFER_USAGE_TRANSFER_DST_BIT | VK_BUFFER_USAGE_VERTEX_BUFFER_BIT, VMA_MEMORY_USAGE_GPU_ONLY, 0);
+        indicesBuffer = new VulkanBuffer(device, maxIndices * GraphConstants.INT_LENGTH,
+                VK_BUFFER_USAGE_TRANSFER_DST_BIT | VK_BUFFER_USAGE_INDEX_BUFFER_BIT, VMA_MEMORY_USAGE_GPU_ONLY, 0);
+        verticesAllocator = new RangeAllocator(maxVertices);
+        indicesAllocator = new RangeAllocator(maxIndices);
+    }
+
+    public ArenaRange allocate(int numVertices, int numIndices) {
+        long vertexOffset = verticesAllocator.allocate(numVertices);
+        if (vertexOffset < 0) {
+            throw new RuntimeException("Geometry arena out of vertices space, requested [" + numVertices +
+                    "] vertices, used [" + verticesAllocator.getUsedSize() + "] of [" +
+                    verticesAllocator.getCapacity() + "]");
+        }
+        long firstIndex = indicesAllocator.allocate(numIndices);
+        if (firstIndex < 0) {
+            verticesAllocator.free(vertexOffset, numVertices);
+            throw new RuntimeException("Geometry arena out of indices space, requested [" + numIndices +
+                    "] indices, used [" + indicesAllocator.getUsedSize() + "] of [" +
+                    indicesAllocator.getCapacity() + "]");
+        }
+        return new ArenaRange(this, (int) vertexOffset, numVertices, (int) firstIndex, numIndices);
+    }
+
+    public void cleanup() {
+        LOGGER.debug("Destroying geometry arena");
+        verticesBuffer.cleanup();
+        indicesBuffer.cleanup();
+    }
+
+    public VulkanBuffer getIndicesBuffer() {
+        return indicesBuffer;
+    }
+
+    public VulkanBuffer getVerticesBuffer() {
+        return verticesBuffer;
+    }
+
+    private void free(ArenaRange arenaRange) {
+        verticesAllocator.free(arenaRange.getVertexOffset(), arenaRange.getNumVertices());
+        indicesAllocator.free(arenaRange.getFirstIndex(), arenaRange.getNumIndices());
+    }
+
+    // A contiguous range of the arena shared by all the meshes uploaded together. It is returned to the arena once
+    // every mesh that references it has been released
+    public static class ArenaRange {
+        private final GeometryArena arena;
+        private final int firstIndex;
+        private final int numIndices;
+        private final int numVertices;
+        private final int vertexOffset;
+        private int references;
+
+        private ArenaRange(GeometryArena arena, int vertexOffset, int numVertices, int firstIndex, int numIndices) {
+            this.arena = arena;
+            this.vertexOffset = vertexOffset;
+            this.numVertices = numVertices;
+            this.firstIndex = firstIndex;
+            this.numIndices = numIndices;
+        }
+
+        public void acquire() {
+            references++;
+        }
+
+        public int getFirstIndex() {
+            return firstIndex;
+        }
+
+        public int getNumIndices() {
+            return numIndices;
+        }
+
+        public int getNumVertices() {
+            return numVertices;
+        }
+
+        public int getVertexOffset() {
+            return vertexOffset;
+        }
+
+        public void release() {
+            references--;
+            if (references == 0) {
+                arena.free(this);
+            }
+        }
+    }
+}
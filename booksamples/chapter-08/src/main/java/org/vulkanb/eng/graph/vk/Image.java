@@ -1,20 +1,23 @@
 package org.vulkanb.eng.graph.vk;
 
+import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryStack;
-import org.lwjgl.vulkan.*;
+import org.lwjgl.util.vma.VmaAllocationCreateInfo;
+import org.lwjgl.vulkan.VkImageCreateInfo;
 
 import java.nio.LongBuffer;
 
+import static org.lwjgl.util.vma.Vma.*;
 import static org.lwjgl.vulkan.VK11.*;
 import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
 
 public class Image {
 
+    private long allocation;
     private Device device;
     private int format;
     private int mipLevels;
     private long vkImage;
-    private long vkMemory;
 
     public Image(Device device, int width, int height, int format, int usage, int mipLevels, int sampleCount) {
         this.device = device;
@@ -39,34 +42,20 @@ public class Image {
                     .tiling(VK_IMAGE_TILING_OPTIMAL)
                     .usage(usage);
 
+            VmaAllocationCreateInfo allocInfo = VmaAllocationCreateInfo.callocStack(stack)
+                    .usage(VMA_MEMORY_USAGE_GPU_ONLY);
+
+            PointerBuffer pAllocation = stack.callocPointer(1);
             LongBuffer lp = stack.mallocLong(1);
-            vkCheck(vkCreateImage(device.getVkDevice(), imageCreateInfo, null, lp), "Failed to create image");
+            vkCheck(vmaCreateImage(device.getMemoryAllocator().getVmaAllocator(), imageCreateInfo, allocInfo, lp,
+                    pAllocation, null), "Failed to create image");
             vkImage = lp.get(0);
-
-            // Get memory requirements for this object
-            VkMemoryRequirements memReqs = VkMemoryRequirements.callocStack(stack);
-            vkGetImageMemoryRequirements(device.getVkDevice(), getVkImage(), memReqs);
-
-            // Select memory size and type
-            VkMemoryAllocateInfo memAlloc = VkMemoryAllocateInfo.callocStack(stack)
-                    .sType(VK_STRUCTURE_TYPE_MEMORY_ALLOCATE_INFO)
-                    .allocationSize(memReqs.size())
-                    .memoryTypeIndex(VulkanUtils.memoryTypeFromProperties(device.getPhysicalDevice(),
-                            memReqs.memoryTypeBits(), 0));
-
-            // Allocate memory
-            vkCheck(vkAllocateMemory(device.getVkDevice(), memAlloc, null, lp), "Failed to allocate memory");
-            vkMemory = lp.get(0);
-
-            // Bind memory
-            vkCheck(vkBindImageMemory(device.getVkDevice(), getVkImage(), getVkMemory(), 0),
-                    "Failed to bind image memory");
+            allocation = pAllocation.get(0);
         }
     }
 
     public void cleanup() {
-        vkDestroyImage(device.getVkDevice(), vkImage, null);
-        vkFreeMemory(device.getVkDevice(), vkMemory, null);
+        vmaDestroyImage(device.getMemoryAllocator().getVmaAllocator(), vkImage, allocation);
     }
 
     public int getFormat() {
@@ -81,8 +70,4 @@ public class Image {
         return vkImage;
     }
 
-    public long getVkMemory() {
-        return vkMemory;
-    }
-
 }
@@ -0,0 +1,78 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.VkDrawIndexedIndirectCommand;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.util.vma.Vma.VMA_MEMORY_USAGE_CPU_TO_GPU;
+import static org.lwjgl.vulkan.VK11.*;
+
+// Host visible buffers, persistently mapped, holding indexed indirect draw commands and the draw counts read by the
+// count variant of indirect draws. A draw count is stored in the slot of the first command of its group
+public class IndirectDrawBuffer {
+
+    public static final int COMMAND_SIZE = VkDrawIndexedIndirectCommand.SIZEOF;
+    public static final int COUNT_SIZE = GraphConstants.INT_LENGTH;
+    private static final int INITIAL_DRAWS = 256;
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final Device device;
+    private int capacity;
+    private ByteBuffer commands;
+    private VulkanBuffer commandsBuffer;
+    private ByteBuffer counts;
+    private VulkanBuffer countsBuffer;
+
+    public IndirectDrawBuffer(Device device) {
+        this.device = device;
+        createBuffers(INITIAL_DRAWS);
+    }
+
+    public void cleanup() {
+        commandsBuffer.cleanup();
+        countsBuffer.cleanup();
+    }
+
+    private void createBuffers(int numDraws) {
+        capacity = numDraws;
+        commandsBuffer = new VulkanBuffer(device, (long) capacity * COMMAND_SIZE, VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT,
+                VMA_MEMORY_USAGE_CPU_TO_GPU, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
+        commands = MemoryUtil.memByteBuffer(commandsBuffer.map(), (int) commandsBuffer.getRequestedSize());
+        countsBuffer = new VulkanBuffer(device, (long) capacity * COUNT_SIZE, VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT,
+                VMA_MEMORY_USAGE_CPU_TO_GPU, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
+        counts = MemoryUtil.memByteBuffer(countsBuffer.map(), (int) countsBuffer.getRequestedSize());
+    }
+
+    // The buffers must not be in use by the GPU, their contents are discarded when they need to grow
+    public void ensureCapacity(int numDraws) {
+        if (numDraws > capacity) {
+            int newCapacity = Math.max(numDraws, capacity * 2);
+            LOGGER.debug("Growing indirect draw buffer from [{}] to [{}] draws", capacity, newCapacity);
+            cleanup();
+            createBuffers(newCapacity);
+        }
+    }
+
+    public long getCommandsBuffer() {
+        return commandsBuffer.getBuffer();
+    }
+
+    public long getCountsBuffer() {
+        return countsBuffer.getBuffer();
+    }
+
+    public void setCommand(int draw, int indexCount, int instanceCount, int firstIndex, int vertexOffset,
+                           int firstInstance) {
+        int offset = draw * COMMAND_SIZE;
+        commands.putInt(offset + VkDrawIndexedIndirectCommand.INDEXCOUNT, indexCount);
+        commands.putInt(offset + VkDrawIndexedIndirectCommand.INSTANCECOUNT, instanceCount);
+        commands.putInt(offset + VkDrawIndexedIndirectCommand.FIRSTINDEX, firstIndex);
+        commands.putInt(offset + VkDrawIndexedIndirectCommand.VERTEXOFFSET, vertexOffset);
+        commands.putInt(offset + VkDrawIndexedIndirectCommand.FIRSTINSTANCE, firstInstance);
+    }
+
+    public void setCount(int draw, int count) {
+        counts.putInt(draw * COUNT_SIZE, count);
+    }
+}
@@ -0,0 +1,56 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.util.vma.Vma.VMA_MEMORY_USAGE_CPU_TO_GPU;
+import static org.lwjgl.vulkan.VK11.*;
+
+// Host visible vertex buffer, persistently mapped, holding one model matrix per instance
+public class InstanceBuffer {
+
+    private static final int INITIAL_INSTANCES = 1024;
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final Device device;
+    private VulkanBuffer buffer;
+    private int capacity;
+    private ByteBuffer data;
+
+    public InstanceBuffer(Device device) {
+        this.device = device;
+        createBuffer(INITIAL_INSTANCES);
+    }
+
+    public void cleanup() {
+        buffer.cleanup();
+    }
+
+    private void createBuffer(int numInstances) {
+        capacity = numInstances;
+        buffer = new VulkanBuffer(device, (long) capacity * GraphConstants.MAT4X4_SIZE,
+                VK_BUFFER_USAGE_VERTEX_BUFFER_BIT, VMA_MEMORY_USAGE_CPU_TO_GPU,
+                VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
+        data = MemoryUtil.memByteBuffer(buffer.map(), (int) buffer.getRequestedSize());
+    }
+
+    // The buffer must not be in use by the GPU, its contents are discarded when it needs to grow
+    public void ensureCapacity(int numInstances) {
+        if (numInstances > capacity) {
+            int newCapacity = Math.max(numInstances, capacity * 2);
+            LOGGER.debug("Growing instance buffer from [{}] to [{}] instances", capacity, newCapacity);
+            buffer.cleanup();
+            createBuffer(newCapacity);
+        }
+    }
+
+    public long getBuffer() {
+        return buffer.getBuffer();
+    }
+
+    public void setModelMatrix(int instance, Matrix4f modelMatrix) {
+        modelMatrix.get(instance * GraphConstants.MAT4X4_SIZE, data);
+    }
+}
@@ -0,0 +1,227 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.lwjgl.system.MemoryUtil;
+import org.vulkanb.eng.EngineUtils;
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+
+import static org.lwjgl.vulkan.VK11.*;
+
+public class Ktx2 {
+
+    public static final String FILE_EXTENSION = ".ktx2";
+    private static final int DFD_BLOCK_HEADER_SIZE = 24;
+    private static final int DFD_SAMPLE_SIZE = 16;
+    private static final int HEADER_SIZE = 80;
+    private static final byte[] IDENTIFIER = {(byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n',
+            0x1A, '\n'};
+    private static final int KHR_DF_CHANNEL_BC3_ALPHA = 15;
+    private static final int KHR_DF_CHANNEL_COLOR = 0;
+    private static final int KHR_DF_MODEL_BC1A = 128;
+    private static final int KHR_DF_MODEL_BC3 = 130;
+    private static final int KHR_DF_MODEL_BC7 = 134;
+    private static final int KHR_DF_PRIMARIES_BT709 = 1;
+    private static final int KHR_DF_SAMPLE_DATATYPE_LINEAR = 0x10;
+    private static final int KHR_DF_TRANSFER_LINEAR = 1;
+    private static final int KHR_DF_TRANSFER_SRGB = 2;
+    private static final int LEVEL_INDEX_ENTRY_SIZE = 24;
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private Ktx2() {
+        // Utility class
+    }
+
+    private static long alignUp(long value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+    private static ByteBuffer createDataFormatDescriptor(int format) {
+        int colorModel;
+        int blockBytes = getBlockBytes(format);
+        int[][] samples;
+        if (isBC1(format)) {
+            colorModel = KHR_DF_MODEL_BC1A;
+            samples = new int[][]{{0, 63, KHR_DF_CHANNEL_COLOR}};
+        } else if (isBC3(format)) {
+            colorModel = KHR_DF_MODEL_BC3;
+            samples = new int[][]{{0, 63, KHR_DF_CHANNEL_BC3_ALPHA}, {64, 63, KHR_DF_CHANNEL_COLOR}};
+        } else {
+            colorModel = KHR_DF_MODEL_BC7;
+            samples = new int[][]{{0, 127, KHR_DF_CHANNEL_COLOR}};
+        }
+        boolean srgb = isSrgb(format);
+
+        int blockSize = DFD_BLOCK_HEADER_SIZE + samples.length * DFD_SAMPLE_SIZE;
+        ByteBuffer dfd = ByteBuffer.allocate(4 + blockSize).order(ByteOrder.LITTLE_ENDIAN);
+        dfd.putInt(4 + blockSize);
+        // Vendor id and descriptor type, both 0 for the Khronos basic descriptor block
+        dfd.putInt(0);
+        dfd.putShort((short) 2).putShort((short) blockSize);
+        dfd.put((byte) colorModel).put((byte) KHR_DF_PRIMARIES_BT709)
+                .put((byte) (srgb ? KHR_DF_TRANSFER_SRGB : KHR_DF_TRANSFER_LINEAR)).put((byte) 0);
+        dfd.put((byte) 3).put((byte) 3).put((byte) 0).put((byte) 0);
+        dfd.put((byte) blockBytes).put(new byte[7]);
+        for (int[] sample : samples) {
+            int channelType = sample[2];
+            if (srgb && channelType == KHR_DF_CHANNEL_BC3_ALPHA) {
+                channelType |= KHR_DF_SAMPLE_DATATYPE_LINEAR;
+            }
+            dfd.putShort((short) sample[0]).put((byte) sample[1]).put((byte) channelType);
+            dfd.putInt(0);
+            dfd.putInt(0).putInt(0xFFFFFFFF);
+        }
+        return dfd.flip();
+    }
+
+    private static int getBlockBytes(int format) {
+        return switch (format) {
+            case VK_FORMAT_BC1_RGB_UNORM_BLOCK, VK_FORMAT_BC1_RGB_SRGB_BLOCK, VK_FORMAT_BC1_RGBA_UNORM_BLOCK,
+                    VK_FORMAT_BC1_RGBA_SRGB_BLOCK -> 8;
+            case VK_FORMAT_BC3_UNORM_BLOCK, VK_FORMAT_BC3_SRGB_BLOCK, VK_FORMAT_BC7_UNORM_BLOCK,
+                    VK_FORMAT_BC7_SRGB_BLOCK -> 16;
+            default -> throw new RuntimeException("Unsupported KTX2 format [" + format + "]");
+        };
+    }
+
+    public static long getLevelSize(int format, int width, int height) {
+        return ((width + 3L) / 4) * ((height + 3L) / 4) * getBlockBytes(format);
+    }
+
+    public static String getSiblingPath(String fileName) {
+        int extensionPos = fileName.lastIndexOf('.');
+        int separatorPos = Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\'));
+        String baseName = extensionPos > separatorPos ? fileName.substring(0, extensionPos) : fileName;
+        return baseName + FILE_EXTENSION;
+    }
+
+    private static boolean isBC1(int format) {
+        return format == VK_FORMAT_BC1_RGB_UNORM_BLOCK || format == VK_FORMAT_BC1_RGB_SRGB_BLOCK ||
+                format == VK_FORMAT_BC1_RGBA_UNORM_BLOCK || format == VK_FORMAT_BC1_RGBA_SRGB_BLOCK;
+    }
+
+    private static boolean isBC3(int format) {
+        return format == VK_FORMAT_BC3_UNORM_BLOCK || format == VK_FORMAT_BC3_SRGB_BLOCK;
+    }
+
+    private static boolean isSrgb(int format) {
+        return format == VK_FORMAT_BC1_RGB_SRGB_BLOCK || format == VK_FORMAT_BC1_RGBA_SRGB_BLOCK ||
+                format == VK_FORMAT_BC3_SRGB_BLOCK || format == VK_FORMAT_BC7_SRGB_BLOCK;
+    }
+
+    // Copies the mip levels into a single buffer, aligned so that each one can be used as a buffer to image copy
+    // source. Levels are copied with raw memory copies, so the header is fully validated against the file size first
+    public static TextureData read(String fileName) {
+        LOGGER.debug("Reading KTX2 texture [{}]", fileName);
+        try (FileChannel fc = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long fileSize = fc.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new RuntimeException("Invalid KTX2 file size [" + fileSize + "] in file [" + fileName + "]");
+            }
+            MappedByteBuffer buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            byte[] identifier = new byte[IDENTIFIER.length];
+            buffer.get(identifier);
+            if (!Arrays.equals(IDENTIFIER, identifier)) {
+                throw new RuntimeException("Not a KTX2 file [" + fileName + "]");
+            }
+            int format = buffer.getInt();
+            buffer.getInt(); // typeSize
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int depth = buffer.getInt();
+            int layerCount = buffer.getInt();
+            int faceCount = buffer.getInt();
+            int levelCount = buffer.getInt();
+            int supercompressionScheme = buffer.getInt();
+            if (!isBC1(format) && !isBC3(format) && format != VK_FORMAT_BC7_UNORM_BLOCK &&
+                    format != VK_FORMAT_BC7_SRGB_BLOCK) {
+                throw new RuntimeException("Unsupported KTX2 format [" + format + "] in file [" + fileName + "]");
+            }
+            if (depth > 1 || layerCount > 1 || faceCount != 1 || supercompressionScheme != 0) {
+                throw new RuntimeException("Unsupported KTX2 texture layout [" + fileName + "]");
+            }
+            // A level count of 0 asks the loader to generate mipmaps, which is not supported, so only one level is read
+            levelCount = Math.max(1, levelCount);
+            if (width <= 0 || height <= 0 || levelCount > MipmapGenerator.getMipLevels(width, height)) {
+                throw new RuntimeException("Invalid KTX2 size [" + width + "x" + height + "], levels [" + levelCount +
+                        "] in file [" + fileName + "]");
+            }
+            long dataStart = HEADER_SIZE + (long) levelCount * LEVEL_INDEX_ENTRY_SIZE;
+            if (dataStart > fileSize) {
+                throw new RuntimeException("Truncated KTX2 level index in file [" + fileName + "]");
+            }
+
+            long[] fileOffsets = new long[levelCount];
+            int[] levelOffsets = new int[levelCount];
+            long[] levelSizes = new long[levelCount];
+            long size = 0;
+            for (int level = 0; level < levelCount; level++) {
+                buffer.position(HEADER_SIZE + level * LEVEL_INDEX_ENTRY_SIZE);
+                fileOffsets[level] = buffer.getLong();
+                long byteLength = buffer.getLong();
+                levelSizes[level] = getLevelSize(format, Math.max(1, width >> level), Math.max(1, height >> level));
+                if (byteLength != levelSizes[level] || fileOffsets[level] < dataStart ||
+                        fileOffsets[level] > fileSize - byteLength) {
+                    throw new RuntimeException("Invalid KTX2 level [" + level + "] in file [" + fileName + "]");
+                }
+                levelOffsets[level] = (int) size;
+                size = alignUp(size + levelSizes[level], 16);
+                if (size > Integer.MAX_VALUE) {
+                    throw new RuntimeException("KTX2 texture too big [" + fileName + "]");
+                }
+            }
+
+            ByteBuffer mipChain = MemoryUtil.memAlloc((int) size);
+            long srcAddress = MemoryUtil.memAddress(buffer, 0);
+            long dstAddress = MemoryUtil.memAddress(mipChain);
+            for (int level = 0; level < levelCount; level++) {
+                MemoryUtil.memCopy(srcAddress + fileOffsets[level], dstAddress + levelOffsets[level],
+                        levelSizes[level]);
+            }
+            return new TextureData(fileName, format, width, height, mipChain, levelOffsets);
+        } catch (IOException excp) {
+            throw new RuntimeException("Could not read KTX2 file [" + fileName + "]", excp);
+        }
+    }
+
+    // Levels must be block compressed with the given format and ordered from the biggest to the smallest one
+    public static void write(Path path, int format, int width, int height, ByteBuffer[] levels) throws IOException {
+        ByteBuffer dfd = createDataFormatDescriptor(format);
+        int levelCount = levels.length;
+        int dfdOffset = HEADER_SIZE + levelCount * LEVEL_INDEX_ENTRY_SIZE;
+        int alignment = getBlockBytes(format);
+
+        // The specification stores the smallest level first
+        long[] fileOffsets = new long[levelCount];
+        int size = dfdOffset + dfd.remaining();
+        for (int level = levelCount - 1; level >= 0; level--) {
+            size = (int) alignUp(size, alignment);
+            fileOffsets[level] = size;
+            size += levels[level].remaining();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(IDENTIFIER);
+        buffer.putInt(format).putInt(1).putInt(width).putInt(height).putInt(0).putInt(0).putInt(1)
+                .putInt(levelCount).putInt(0);
+        buffer.putInt(dfdOffset).putInt(dfd.remaining()).putInt(0).putInt(0);
+        buffer.putLong(0).putLong(0);
+        for (int level = 0; level < levelCount; level++) {
+            long levelSize = levels[level].remaining();
+            buffer.putLong(fileOffsets[level]).putLong(levelSize).putLong(levelSize);
+        }
+        buffer.put(dfd);
+        for (int level = 0; level < levelCount; level++) {
+            buffer.position((int) fileOffsets[level]);
+            buffer.put(levels[level].duplicate());
+        }
+        buffer.rewind();
+        EngineUtils.writeAtomically(path, buffer);
+    }
+}
@@ -0,0 +1,45 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.util.vma.*;
+import org.lwjgl.vulkan.VkDevice;
+
+import static org.lwjgl.util.vma.Vma.*;
+import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
+
+public class MemoryAllocator {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final long vmaAllocator;
+
+    public MemoryAllocator(Instance instance, PhysicalDevice physicalDevice, VkDevice vkDevice) {
+        LOGGER.debug("Creating memory allocator");
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VmaVulkanFunctions vmaVulkanFunctions = VmaVulkanFunctions.callocStack(stack)
+                    .set(instance.getVkInstance(), vkDevice);
+
+            // Resources are carved out of large blocks per memory type. Allocations bigger than half a block
+            // are automatically routed to their own dedicated vkAllocateMemory call
+            VmaAllocatorCreateInfo createInfo = VmaAllocatorCreateInfo.callocStack(stack)
+                    .device(vkDevice)
+                    .physicalDevice(physicalDevice.getVkPhysicalDevice())
+                    .pVulkanFunctions(vmaVulkanFunctions);
+            PointerBuffer pAllocator = stack.mallocPointer(1);
+            vkCheck(vmaCreateAllocator(createInfo, pAllocator),
+                    "Failed to create VMA allocator");
+
+            vmaAllocator = pAllocator.get(0);
+        }
+    }
+
+    public void cleanup() {
+        LOGGER.debug("Destroying memory allocator");
+        vmaDestroyAllocator(vmaAllocator);
+    }
+
+    public long getVmaAllocator() {
+        return vmaAllocator;
+    }
+}
@@ -0,0 +1,118 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
+
+public class MipmapGenerator {
+
+    // RGBA
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final byte[] LINEAR_TO_SRGB;
+    private static final int LINEAR_TO_SRGB_PRECISION = 4096;
+    // Levels with less pixels than this are not worth splitting across threads
+    private static final int PARALLEL_THRESHOLD = 256 * 256;
+    private static final float[] SRGB_TO_LINEAR;
+
+    static {
+        SRGB_TO_LINEAR = new float[256];
+        for (int i = 0; i < 256; i++) {
+            float value = i / 255.0f;
+            SRGB_TO_LINEAR[i] = value <= 0.04045f ? value / 12.92f : (float) Math.pow((value + 0.055f) / 1.055f, 2.4f);
+        }
+        LINEAR_TO_SRGB = new byte[LINEAR_TO_SRGB_PRECISION + 1];
+        for (int i = 0; i <= LINEAR_TO_SRGB_PRECISION; i++) {
+            float value = (float) i / LINEAR_TO_SRGB_PRECISION;
+            float srgb = value <= 0.0031308f ? value * 12.92f : 1.055f * (float) Math.pow(value, 1.0f / 2.4f) - 0.055f;
+            LINEAR_TO_SRGB[i] = (byte) Math.round(srgb * 255.0f);
+        }
+    }
+
+    private MipmapGenerator() {
+        // Utility class
+    }
+
+    private static void downsample(ByteBuffer src, int srcOffset, int srcWidth, int srcHeight, ByteBuffer dst,
+                                   int dstOffset, int dstWidth, int dstHeight, boolean srgb) {
+        IntStream rows = IntStream.range(0, dstHeight);
+        if (dstWidth * dstHeight >= PARALLEL_THRESHOLD) {
+            rows = rows.parallel();
+        }
+        rows.forEach(y -> downsampleRow(src, srcOffset, srcWidth, srcHeight, dst, dstOffset, dstWidth, y, srgb));
+    }
+
+    private static void downsampleRow(ByteBuffer src, int srcOffset, int srcWidth, int srcHeight, ByteBuffer dst,
+                                      int dstOffset, int dstWidth, int y, boolean srgb) {
+        // Odd sizes clamp the second row or column to the edge of the source level
+        int y0 = Math.min(y * 2, srcHeight - 1);
+        int y1 = Math.min(y * 2 + 1, srcHeight - 1);
+        int row0 = srcOffset + y0 * srcWidth * BYTES_PER_PIXEL;
+        int row1 = srcOffset + y1 * srcWidth * BYTES_PER_PIXEL;
+        int dstPos = dstOffset + y * dstWidth * BYTES_PER_PIXEL;
+        for (int x = 0; x < dstWidth; x++) {
+            int x0 = Math.min(x * 2, srcWidth - 1) * BYTES_PER_PIXEL;
+            int x1 = Math.min(x * 2 + 1, srcWidth - 1) * BYTES_PER_PIXEL;
+            for (int c = 0; c < BYTES_PER_PIXEL; c++) {
+                int p00 = src.get(row0 + x0 + c) & 0xFF;
+                int p01 = src.get(row0 + x1 + c) & 0xFF;
+                int p10 = src.get(row1 + x0 + c) & 0xFF;
+                int p11 = src.get(row1 + x1 + c) & 0xFF;
+                byte value;
+                // Alpha is always linear
+                if (srgb && c < 3) {
+                    float linear = (SRGB_TO_LINEAR[p00] + SRGB_TO_LINEAR[p01] + SRGB_TO_LINEAR[p10] +
+                            SRGB_TO_LINEAR[p11]) * 0.25f;
+                    value = LINEAR_TO_SRGB[Math.round(linear * LINEAR_TO_SRGB_PRECISION)];
+                } else {
+                    value = (byte) ((p00 + p01 + p10 + p11 + 2) >> 2);
+                }
+                dst.put(dstPos++, value);
+            }
+        }
+    }
+
+    // Fills dst with the whole mip chain, level 0 included, each level tightly packed after the previous one
+    public static void generate(ByteBuffer pixels, int width, int height, int mipLevels, boolean srgb,
+                                ByteBuffer dst) {
+        int levelSize = width * height * BYTES_PER_PIXEL;
+        MemoryUtil.memCopy(MemoryUtil.memAddress(pixels), MemoryUtil.memAddress(dst), levelSize);
+        int srcOffset = 0;
+        int srcWidth = width;
+        int srcHeight = height;
+        for (int level = 1; level < mipLevels; level++) {
+            int dstOffset = srcOffset + srcWidth * srcHeight * BYTES_PER_PIXEL;
+            int dstWidth = Math.max(1, srcWidth / 2);
+            int dstHeight = Math.max(1, srcHeight / 2);
+            downsample(dst, srcOffset, srcWidth, srcHeight, dst, dstOffset, dstWidth, dstHeight, srgb);
+            srcOffset = dstOffset;
+            srcWidth = dstWidth;
+            srcHeight = dstHeight;
+        }
+    }
+
+    public static int[] getLevelOffsets(int width, int height, int mipLevels) {
+        int[] levelOffsets = new int[mipLevels];
+        int offset = 0;
+        int levelWidth = width;
+        int levelHeight = height;
+        for (int level = 0; level < mipLevels; level++) {
+            levelOffsets[level] = offset;
+            offset += levelWidth * levelHeight * BYTES_PER_PIXEL;
+            levelWidth = Math.max(1, levelWidth / 2);
+            levelHeight = Math.max(1, levelHeight / 2);
+        }
+        return levelOffsets;
+    }
+
+    public static int getMipChainSize(int width, int height, int mipLevels) {
+        int lastLevel = mipLevels - 1;
+        int lastWidth = Math.max(1, width >> lastLevel);
+        int lastHeight = Math.max(1, height >> lastLevel);
+        return getLevelOffsets(width, height, mipLevels)[lastLevel] + lastWidth * lastHeight * BYTES_PER_PIXEL;
+    }
+
+    public static int getMipLevels(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+}
@@ -0,0 +1,83 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.vulkanb.eng.EngineUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Records a list of items into secondary command buffers, splitting it in contiguous ranges across worker threads
+public class ParallelCommandRecorder {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    // Below this number of items per range the cost of handing work to another thread is not worth it
+    private static final int MIN_ITEMS_PER_TASK = 256;
+    // Secondary command buffers, by frame in flight and task
+    private final CommandBuffer[][] commandBuffers;
+    // Command pools are externally synchronized, each task uses its own one
+    private final CommandPool[] commandPools;
+    private final ExecutorService executor;
+    private final int numTasks;
+
+    public ParallelCommandRecorder(CommandPool commandPool, int numFrames, int numThreads) {
+        LOGGER.debug("Creating parallel command recorder with [{}] threads", numThreads);
+        numTasks = Math.max(1, numThreads);
+        executor = EngineUtils.createThreadPool("command-recorder", numTasks);
+        commandPools = new CommandPool[numTasks];
+        for (int i = 0; i < numTasks; i++) {
+            commandPools[i] = new CommandPool(commandPool.getDevice(), commandPool.getQueueFamilyIndex());
+        }
+        commandBuffers = new CommandBuffer[numFrames][numTasks];
+        for (int i = 0; i < numFrames; i++) {
+            for (int j = 0; j < numTasks; j++) {
+                commandBuffers[i][j] = new CommandBuffer(commandPools[j], false, false);
+            }
+        }
+    }
+
+    public void cleanup() {
+        LOGGER.debug("Destroying parallel command recorder");
+        executor.shutdownNow();
+        Arrays.stream(commandBuffers).flatMap(Arrays::stream).forEach(CommandBuffer::cleanup);
+        Arrays.stream(commandPools).forEach(CommandPool::cleanup);
+    }
+
+    // Records the items for the given frame, whose previous submission must have completed, and returns
+    // the secondary command buffers to be executed, in order, by the primary one
+    public List<CommandBuffer> record(int frameIdx, int numItems, CommandBuffer.InheritanceInfo inheritanceInfo,
+                                      RangeRecorder rangeRecorder) {
+        int tasks = Math.max(1, Math.min(numTasks, numItems / MIN_ITEMS_PER_TASK));
+        int itemsPerTask = (numItems + tasks - 1) / tasks;
+        List<CommandBuffer> result = new ArrayList<>(tasks);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            CommandBuffer commandBuffer = commandBuffers[frameIdx][i];
+            int from = Math.min(numItems, i * itemsPerTask);
+            int to = Math.min(numItems, from + itemsPerTask);
+            Runnable task = () -> {
+                commandBuffer.reset();
+                commandBuffer.beginRecording(inheritanceInfo);
+                rangeRecorder.record(commandBuffer.getVkCommandBuffer(), from, to);
+                commandBuffer.endRecording();
+            };
+            // A single range is recorded in the calling thread
+            if (tasks == 1) {
+                task.run();
+            } else {
+                futures.add(CompletableFuture.runAsync(task, executor));
+            }
+            result.add(commandBuffer);
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException excp) {
+            throw new RuntimeException("Failed to record command buffers", excp.getCause());
+        }
+        return result;
+    }
+
+    public interface RangeRecorder {
+        void record(VkCommandBuffer cmdHandle, int from, int to);
+    }
+}
@@ -151,6 +151,18 @@ public class PhysicalDevice {
         return vkQueueFamilyProps;
     }
 
+    public boolean hasDeviceExtension(String extensionName) {
+        boolean result = false;
+        int numExtensions = vkDeviceExtensions != null ? vkDeviceExtensions.capacity() : 0;
+        for (int i = 0; i < numExtensions; i++) {
+            if (extensionName.equals(vkDeviceExtensions.get(i).extensionNameString())) {
+                result = true;
+                break;
+            }
+        }
+        return result;
+    }
+
     private boolean hasGraphicsQueueFamily() {
         boolean result = false;
         int numQueueFamilies = vkQueueFamilyProps != null ? vkQueueFamilyProps.capacity() : 0;
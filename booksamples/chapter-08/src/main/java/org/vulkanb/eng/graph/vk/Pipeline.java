@@ -92,7 +92,7 @@ public class Pipeline {
             VkPushConstantRange.Buffer vpcr = null;
             if (pipeLineCreationInfo.pushConstantsSize() > 0) {
                 vpcr = VkPushConstantRange.callocStack(1, stack)
-                        .stageFlags(VK_SHADER_STAGE_VERTEX_BIT)
+                        .stageFlags(pipeLineCreationInfo.pushConstantsStages())
                         .offset(0)
                         .size(pipeLineCreationInfo.pushConstantsSize());
             }
@@ -149,7 +149,7 @@ public class Pipeline {
     }
 
     public record PipeLineCreationInfo(long vkRenderPass, ShaderProgram shaderProgram, int numColorAttachments,
-                                       boolean hasDepthAttachment, int pushConstantsSize,
+                                       boolean hasDepthAttachment, int pushConstantsSize, int pushConstantsStages,
                                        VertexBufferStructure vertexBufferStructure,
                                        DescriptorSetLayout[]descriptorSetLayouts) {
         public void cleanup() {
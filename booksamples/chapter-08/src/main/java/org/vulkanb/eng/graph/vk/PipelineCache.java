@@ -1,34 +1,81 @@
 package org.vulkanb.eng.graph.vk;
 
 import org.apache.logging.log4j.*;
-import org.lwjgl.system.MemoryStack;
-import org.lwjgl.vulkan.VkPipelineCacheCreateInfo;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.*;
+import org.lwjgl.vulkan.*;
+import org.vulkanb.eng.EngineUtils;
 
-import java.nio.LongBuffer;
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32;
 
 import static org.lwjgl.vulkan.VK11.*;
 import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
 
+// When a file is provided, the cache contents are restored from it on creation and stored back on cleanup. The file
+// header identifies the device and driver that produced the data, so it is discarded if any of them change
 public class PipelineCache {
+    private static final int HEADER_SIZE = 4 * GraphConstants.INT_LENGTH + VK_UUID_SIZE + 8 + 8;
     private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAGIC = 0x564B5043;
+    private static final int VERSION = 1;
+    private Path cacheFile;
     private Device device;
     private long vkPipelineCache;
 
     public PipelineCache(Device device) {
+        this(device, null);
+    }
+
+    public PipelineCache(Device device, String cacheFile) {
         LOGGER.debug("Creating pipeline cache");
         this.device = device;
+        this.cacheFile = cacheFile != null ? Paths.get(cacheFile) : null;
+        ByteBuffer initialData = this.cacheFile != null ? load() : null;
         try (MemoryStack stack = MemoryStack.stackPush()) {
             VkPipelineCacheCreateInfo createInfo = VkPipelineCacheCreateInfo.callocStack(stack)
-                    .sType(VK_STRUCTURE_TYPE_PIPELINE_CACHE_CREATE_INFO);
+                    .sType(VK_STRUCTURE_TYPE_PIPELINE_CACHE_CREATE_INFO)
+                    .pInitialData(initialData);
 
             LongBuffer lp = stack.mallocLong(1);
-            vkCheck(vkCreatePipelineCache(device.getVkDevice(), createInfo, null, lp),
-                    "Error creating pipeline cache");
+            int err = vkCreatePipelineCache(device.getVkDevice(), createInfo, null, lp);
+            if (err != VK_SUCCESS && initialData != null) {
+                // The driver rejected the stored data, start with an empty cache
+                LOGGER.warn("Could not create pipeline cache from [{}], error [{}]", this.cacheFile, err);
+                createInfo.pInitialData(null);
+                err = vkCreatePipelineCache(device.getVkDevice(), createInfo, null, lp);
+            }
+            vkCheck(err, "Error creating pipeline cache");
             vkPipelineCache = lp.get(0);
+        } finally {
+            if (initialData != null) {
+                MemoryUtil.memFree(initialData);
+            }
         }
     }
 
+    private static long checksum(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        return crc.getValue();
+    }
+
+    private static void readFully(FileChannel fc, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (fc.read(buffer) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+    }
+
     public void cleanup() {
+        if (cacheFile != null) {
+            store();
+        }
         LOGGER.debug("Destroying pipeline cache");
         vkDestroyPipelineCache(device.getVkDevice(), vkPipelineCache, null);
     }
@@ -40,4 +87,91 @@ public class PipelineCache {
     public long getVkPipelineCache() {
         return vkPipelineCache;
     }
+
+    // Returns the cache data, without the file header, in memory that must be freed by the caller, or null if the
+    // file does not exist or does not match the current device
+    private ByteBuffer load() {
+        ByteBuffer result = null;
+        if (Files.exists(cacheFile)) {
+            try (FileChannel fc = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+                long fileSize = fc.size();
+                if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                    throw new IOException("Invalid file size [" + fileSize + "]");
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(fc, header);
+                long dataSize = readHeader(header);
+                if (dataSize < 0 || dataSize != fileSize - HEADER_SIZE) {
+                    LOGGER.info("Discarding pipeline cache file [{}] created for another device or driver",
+                            cacheFile);
+                } else {
+                    long expectedChecksum = header.getLong(HEADER_SIZE - 8);
+                    result = MemoryUtil.memAlloc((int) dataSize);
+                    readFully(fc, result);
+                    if (checksum(result) != expectedChecksum) {
+                        LOGGER.warn("Discarding corrupted pipeline cache file [{}]", cacheFile);
+                        MemoryUtil.memFree(result);
+                        result = null;
+                    } else {
+                        LOGGER.debug("Loaded [{}] bytes from pipeline cache file [{}]", dataSize, cacheFile);
+                    }
+                }
+            } catch (IOException excp) {
+                LOGGER.warn("Could not read pipeline cache file [{}]", cacheFile, excp);
+                if (result != null) {
+                    MemoryUtil.memFree(result);
+                    result = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Returns the size of the data following the header, or -1 if the header does not match the current device
+    private long readHeader(ByteBuffer header) {
+        VkPhysicalDeviceProperties props = device.getPhysicalDevice().getVkPhysicalDeviceProperties();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != props.vendorID() ||
+                header.getInt() != props.deviceID()) {
+            return -1;
+        }
+        ByteBuffer uuid = props.pipelineCacheUUID();
+        for (int i = 0; i < VK_UUID_SIZE; i++) {
+            if (header.get() != uuid.get(i)) {
+                return -1;
+            }
+        }
+        return header.getLong();
+    }
+
+    private void store() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            PointerBuffer pSize = stack.mallocPointer(1);
+            vkCheck(vkGetPipelineCacheData(device.getVkDevice(), vkPipelineCache, pSize, null),
+                    "Failed to get pipeline cache data size");
+            ByteBuffer data = MemoryUtil.memAlloc((int) pSize.get(0));
+            try {
+                vkCheck(vkGetPipelineCacheData(device.getVkDevice(), vkPipelineCache, pSize, data),
+                        "Failed to get pipeline cache data");
+                data.limit((int) pSize.get(0));
+
+                VkPhysicalDeviceProperties props = device.getPhysicalDevice().getVkPhysicalDeviceProperties();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+                        .putInt(MAGIC)
+                        .putInt(VERSION)
+                        .putInt(props.vendorID())
+                        .putInt(props.deviceID())
+                        .put(props.pipelineCacheUUID())
+                        .putLong(data.remaining())
+                        .putLong(checksum(data))
+                        .flip();
+
+                EngineUtils.writeAtomically(cacheFile, header, data);
+                LOGGER.debug("Stored [{}] bytes in pipeline cache file [{}]", pSize.get(0), cacheFile);
+            } catch (IOException excp) {
+                LOGGER.warn("Could not write pipeline cache file [{}]", cacheFile, excp);
+            } finally {
+                MemoryUtil.memFree(data);
+            }
+        }
+    }
 }
@@ -0,0 +1,190 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.lwjgl.vulkan.*;
+import org.vulkanb.eng.EngineUtils;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Pipelines keyed by the structural contents of their creation info, so equivalent requests share the same pipeline.
+// Missing pipelines are compiled in background threads through the shared pipeline cache; until they are ready,
+// lookups return null and callers are expected to skip their draws or use a fallback
+public class PipelineRegistry {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final ExecutorService executor;
+    private final PipelineCache pipelineCache;
+    private final Map<PipelineKey, CompletableFuture<Pipeline>> pipelines;
+
+    public PipelineRegistry(PipelineCache pipelineCache, int numThreads) {
+        LOGGER.debug("Creating pipeline registry with [{}] threads", numThreads);
+        this.pipelineCache = pipelineCache;
+        executor = EngineUtils.createThreadPool("pipeline-compiler", Math.max(1, numThreads));
+        pipelines = new ConcurrentHashMap<>();
+    }
+
+    // Covers everything that is baked into the pipeline: render pass, shaders, fixed function state, vertex layout
+    // and pipeline layout. Raster, blend and depth state are derived from these fields by the Pipeline class. Shaders
+    // and descriptor set layouts are identified by their contents, since handles of destroyed objects may be reused
+    // by the driver. Render passes are created before, and destroyed after, the pipelines that use them
+    public static PipelineKey createKey(Pipeline.PipeLineCreationInfo info) {
+        List<Long> values = new ArrayList<>();
+        values.add(info.vkRenderPass());
+        // Element counts are included so that fields from different sections can never be confused
+        ShaderProgram.ShaderModule[] shaderModules = info.shaderProgram().getShaderModules();
+        values.add((long) shaderModules.length);
+        for (ShaderProgram.ShaderModule shaderModule : shaderModules) {
+            values.add((long) shaderModule.shaderStage());
+            ByteBuffer codeDigest = ByteBuffer.wrap(shaderModule.codeDigest());
+            while (codeDigest.hasRemaining()) {
+                values.add(codeDigest.getLong());
+            }
+        }
+        values.add((long) info.numColorAttachments());
+        values.add(info.hasDepthAttachment() ? 1L : 0L);
+        values.add((long) info.pushConstantsSize());
+        values.add((long) info.pushConstantsStages());
+
+        VkPipelineVertexInputStateCreateInfo vi = info.vertexBufferStructure().getVi();
+        VkVertexInputBindingDescription.Buffer bindings = vi.pVertexBindingDescriptions();
+        int numBindings = bindings != null ? bindings.remaining() : 0;
+        values.add((long) numBindings);
+        for (int i = 0; i < numBindings; i++) {
+            VkVertexInputBindingDescription binding = bindings.get(i);
+            values.add((long) binding.binding());
+            values.add((long) binding.stride());
+            values.add((long) binding.inputRate());
+        }
+        VkVertexInputAttributeDescription.Buffer attributes = vi.pVertexAttributeDescriptions();
+        int numAttributes = attributes != null ? attributes.remaining() : 0;
+        values.add((long) numAttributes);
+        for (int i = 0; i < numAttributes; i++) {
+            VkVertexInputAttributeDescription attribute = attributes.get(i);
+            values.add((long) attribute.location());
+            values.add((long) attribute.binding());
+            values.add((long) attribute.format());
+            values.add((long) attribute.offset());
+        }
+
+        DescriptorSetLayout[] descriptorSetLayouts = info.descriptorSetLayouts();
+        values.add((long) descriptorSetLayouts.length);
+        for (DescriptorSetLayout descriptorSetLayout : descriptorSetLayouts) {
+            List<DescriptorSetLayout.LayoutBinding> layoutBindings = descriptorSetLayout.getLayoutBindings();
+            values.add((long) descriptorSetLayout.getLayoutFlags());
+            values.add((long) layoutBindings.size());
+            for (DescriptorSetLayout.LayoutBinding layoutBinding : layoutBindings) {
+                values.add((long) layoutBinding.binding());
+                values.add((long) layoutBinding.descriptorType());
+                values.add((long) layoutBinding.descriptorCount());
+                values.add((long) layoutBinding.stageFlags());
+                values.add((long) layoutBinding.bindingFlags());
+            }
+        }
+        return new PipelineKey(values.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    // Waits for the pipelines being compiled, so no compilation uses resources that are about to be destroyed
+    public void cleanup() {
+        LOGGER.debug("Destroying pipeline registry");
+        for (CompletableFuture<Pipeline> future : pipelines.values()) {
+            try {
+                future.join().cleanup();
+            } catch (CompletionException excp) {
+                // Already reported when compilation failed
+            }
+        }
+        pipelines.clear();
+        executor.shutdownNow();
+    }
+
+    // Returns the pipeline if it has been compiled, null otherwise
+    public Pipeline get(PipelineKey key) {
+        CompletableFuture<Pipeline> future = pipelines.get(key);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return future.join();
+    }
+
+    // Returns true if the pipeline could not be compiled
+    public boolean isFailed(PipelineKey key) {
+        CompletableFuture<Pipeline> future = pipelines.get(key);
+        return future != null && future.isCompletedExceptionally();
+    }
+
+    // Removes a compiled pipeline, which is no longer shared with later requests. The caller becomes responsible for
+    // destroying it, returns null if the pipeline does not exist or failed to compile
+    public Pipeline release(PipelineKey key) {
+        CompletableFuture<Pipeline> future = pipelines.remove(key);
+        if (future == null) {
+            return null;
+        }
+        try {
+            return future.join();
+        } catch (CompletionException excp) {
+            return null;
+        }
+    }
+
+    // Takes ownership of the creation info, which is released once it is no longer needed. Returns the key used to
+    // look the pipeline up, it is only compiled if no equivalent pipeline has been requested before
+    public PipelineKey request(Pipeline.PipeLineCreationInfo info) {
+        PipelineKey key = createKey(info);
+        boolean[] created = new boolean[1];
+        pipelines.computeIfAbsent(key, k -> {
+            created[0] = true;
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    long start = System.nanoTime();
+                    Pipeline pipeline = new Pipeline(pipelineCache, info);
+                    LOGGER.debug("Compiled pipeline [{}] in [{}] ms", k,
+                            (System.nanoTime() - start) / 1_000_000);
+                    return pipeline;
+                } catch (RuntimeException excp) {
+                    LOGGER.error("Failed to compile pipeline [{}]", k, excp);
+                    throw excp;
+                } finally {
+                    info.cleanup();
+                }
+            }, executor);
+        });
+        if (!created[0]) {
+            LOGGER.debug("Reusing pipeline [{}]", key);
+            info.cleanup();
+        }
+        return key;
+    }
+
+    // Two keys are equal only if all their values are equal, the hash is computed once since keys are looked up every
+    // frame
+    public record PipelineKey(long[] values, int hash) {
+
+        public PipelineKey(long[] values) {
+            this(values, Arrays.hashCode(values));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PipelineKey)) {
+                return false;
+            }
+            PipelineKey other = (PipelineKey) obj;
+            return hash == other.hash && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toHexString(hash);
+        }
+    }
+}
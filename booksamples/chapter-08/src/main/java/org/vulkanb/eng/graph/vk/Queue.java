@@ -118,4 +118,37 @@ public class Queue {
             return index;
         }
     }
+
+    // Prefers a transfer only family, which usually maps to dedicated DMA engines, falling back to the graphics family
+    public static class TransferQueue extends Queue {
+
+        public TransferQueue(Device device, int queueIndex) {
+            super(device, getTransferQueueFamilyIndex(device), queueIndex);
+        }
+
+        private static int getTransferQueueFamilyIndex(Device device) {
+            int index = -1;
+            int bestScore = -1;
+            PhysicalDevice physicalDevice = device.getPhysicalDevice();
+            VkQueueFamilyProperties.Buffer queuePropsBuff = physicalDevice.getVkQueueFamilyProps();
+            int numQueuesFamilies = queuePropsBuff.capacity();
+            for (int i = 0; i < numQueuesFamilies; i++) {
+                int queueFlags = queuePropsBuff.get(i).queueFlags();
+                if ((queueFlags & VK_QUEUE_TRANSFER_BIT) == 0 || (queueFlags & VK_QUEUE_GRAPHICS_BIT) != 0) {
+                    continue;
+                }
+                int score = (queueFlags & VK_QUEUE_COMPUTE_BIT) == 0 ? 1 : 0;
+                if (score > bestScore) {
+                    index = i;
+                    bestScore = score;
+                }
+            }
+
+            if (index < 0) {
+                LOGGER.debug("No transfer only queue family available, using graphics family for transfers");
+                index = GraphicsQueue.getGraphicsQueueFamilyIndex(device);
+            }
+            return index;
+        }
+    }
 }
@@ -0,0 +1,66 @@
+package org.vulkanb.eng.graph.vk;
+
+import java.util.*;
+
+public class RangeAllocator {
+
+    private final long capacity;
+    // Free ranges, offset to size, kept sorted so that adjacent ranges can be merged when freed
+    private final TreeMap<Long, Long> freeRanges;
+    private long usedSize;
+
+    public RangeAllocator(long capacity) {
+        this.capacity = capacity;
+        freeRanges = new TreeMap<>();
+        freeRanges.put(0L, capacity);
+    }
+
+    public long allocate(long size) {
+        if (size <= 0) {
+            return 0;
+        }
+        long result = -1;
+        for (Map.Entry<Long, Long> entry : freeRanges.entrySet()) {
+            long rangeSize = entry.getValue();
+            if (rangeSize >= size) {
+                result = entry.getKey();
+                freeRanges.remove(result);
+                if (rangeSize > size) {
+                    freeRanges.put(result + size, rangeSize - size);
+                }
+                usedSize += size;
+                break;
+            }
+        }
+        return result;
+    }
+
+    public void free(long offset, long size) {
+        if (size <= 0) {
+            return;
+        }
+        long start = offset;
+        long end = offset + size;
+
+        Map.Entry<Long, Long> previous = freeRanges.floorEntry(offset);
+        if (previous != null && previous.getKey() + previous.getValue() == start) {
+            start = previous.getKey();
+            freeRanges.remove(start);
+        }
+        Long nextSize = freeRanges.get(end);
+        if (nextSize != null) {
+            freeRanges.remove(end);
+            end += nextSize;
+        }
+        freeRanges.put(start, end - start);
+        usedSize -= size;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getUsedSize() {
+        return usedSize;
+    }
+}
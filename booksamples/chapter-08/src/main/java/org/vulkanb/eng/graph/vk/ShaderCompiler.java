@@ -2,69 +2,210 @@ package org.vulkanb.eng.graph.vk;
 
 import org.apache.logging.log4j.*;
 import org.lwjgl.util.shaderc.Shaderc;
+import org.vulkanb.eng.EngineUtils;
 
-import java.io.*;
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
 
+// Compiles GLSL shaders to SPIR-V in a pool of threads, each of them with its own shaderc compiler. Results are cached
+// by a hash of the preprocessed source, the shader stage and the compile options, in memory and, if a directory is
+// provided, on disk. Identical sources are never compiled twice, no matter the file timestamps
 public class ShaderCompiler {
 
     private static final Logger LOGGER = LogManager.getLogger();
+    // Identifies the compile options, must change whenever they do so stale cache entries are not reused
+    private static final String OPTIONS_ID = "shaderc-default-v1";
+    private final Path cacheDir;
+    private final ConcurrentLinkedQueue<Long> compilers;
+    private final ExecutorService executor;
+    private final Map<String, CompletableFuture<byte[]>> results;
+    private final ThreadLocal<Long> threadCompiler;
 
-    private ShaderCompiler() {
-        // Utility class
+    public ShaderCompiler(String cacheDir, int numThreads) {
+        LOGGER.debug("Creating shader compiler with [{}] threads", numThreads);
+        this.cacheDir = cacheDir != null ? Paths.get(cacheDir) : null;
+        compilers = new ConcurrentLinkedQueue<>();
+        executor = EngineUtils.createThreadPool("shader-compiler", Math.max(1, numThreads));
+        results = new ConcurrentHashMap<>();
+        threadCompiler = ThreadLocal.withInitial(() -> {
+            long compiler = Shaderc.shaderc_compiler_initialize();
+            compilers.add(compiler);
+            return compiler;
+        });
     }
 
+    private static String toHex(byte[] data) {
+        StringBuilder sb = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
 
-    public static byte[] compileShader(String shaderCode, int shaderType) {
-        long compiler = 0;
-        long options = 0;
-        byte[] compiledShader;
-
+    public void cleanup() {
+        LOGGER.debug("Destroying shader compiler");
+        executor.shutdown();
         try {
-            compiler = Shaderc.shaderc_compiler_initialize();
-            options = Shaderc.shaderc_compile_options_initialize();
-
-            long result = Shaderc.shaderc_compile_into_spv(
-                    compiler,
-                    shaderCode,
-                    shaderType,
-                    "shader.glsl",
-                    "main",
-                    options
-            );
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        compilers.forEach(Shaderc::shaderc_compiler_release);
+        compilers.clear();
+    }
 
+    private byte[] compile(String fileName, String source, int shaderType) {
+        long options = Shaderc.shaderc_compile_options_initialize();
+        long result = Shaderc.shaderc_compile_into_spv(threadCompiler.get(), source, shaderType, fileName, "main",
+                options);
+        try {
             if (Shaderc.shaderc_result_get_compilation_status(result) != Shaderc.shaderc_compilation_status_success) {
                 throw new RuntimeException("Shader compilation failed: " + Shaderc.shaderc_result_get_error_message(result));
             }
-
             ByteBuffer buffer = Shaderc.shaderc_result_get_bytes(result);
-            compiledShader = new byte[buffer.remaining()];
+            byte[] compiledShader = new byte[buffer.remaining()];
             buffer.get(compiledShader);
+            return compiledShader;
         } finally {
+            Shaderc.shaderc_result_release(result);
             Shaderc.shaderc_compile_options_release(options);
-            Shaderc.shaderc_compiler_release(compiler);
         }
+    }
+
+    // Compiles the shader, unless an identical one has already been compiled, and writes it next to the source with
+    // an .spv extension. The SPIR-V file is only rewritten if its contents change, the result tells if it was
+    public CompletableFuture<Boolean> compileShaderIfChanged(String glslShaderFile, int shaderType) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Path glslFile = Paths.get(glslShaderFile);
+                Path spvFile = Paths.get(glslShaderFile + ".spv");
+                String source = Files.readString(glslFile);
+                String key = computeKey(preprocess(glslShaderFile, source, shaderType), shaderType);
+                byte[] compiledShader = getCompiledShader(key, glslShaderFile, source, shaderType);
+                if (Files.exists(spvFile) && Arrays.equals(Files.readAllBytes(spvFile), compiledShader)) {
+                    LOGGER.debug("Shader [{}] is up to date", spvFile);
+                    return false;
+                }
+                // Replaced atomically, the file may be read by the render thread while shaders are being reloaded
+                LOGGER.debug("Writing [{}]", spvFile);
+                EngineUtils.writeAtomically(spvFile, ByteBuffer.wrap(compiledShader));
+                return true;
+            } catch (IOException excp) {
+                throw new RuntimeException(excp);
+            }
+        }, executor);
+    }
+
+    // Blocks until all the shaders have been compiled, which happens in parallel
+    public void compileShadersIfChanged(ShaderSource... shaderSources) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[shaderSources.length];
+        for (int i = 0; i < shaderSources.length; i++) {
+            futures[i] = compileShaderIfChanged(shaderSources[i].glslShaderFile(), shaderSources[i].shaderType());
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException excp) {
+            throw new RuntimeException("Failed to compile shaders", excp.getCause());
+        }
+    }
 
-        return compiledShader;
+    private String computeKey(String preprocessedSource, int shaderType) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(preprocessedSource.getBytes(StandardCharsets.UTF_8));
+            digest.update((":" + shaderType + ":" + OPTIONS_ID).getBytes(StandardCharsets.UTF_8));
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new RuntimeException(excp);
+        }
     }
 
-    public static void compileShaderIfChanged(String glsShaderFile, int shaderType) {
-        byte[] compiledShader;
+    // Concurrent requests for the same key share a single compilation. Failed compilations are not cached, so they
+    // are retried once the source is fixed
+    private byte[] getCompiledShader(String key, String fileName, String source, int shaderType) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> previous = results.putIfAbsent(key, future);
+        if (previous != null) {
+            try {
+                return previous.join();
+            } catch (CompletionException excp) {
+                Throwable cause = excp.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException("Failed to compile shader [" + fileName + "]", cause);
+            }
+        }
+
         try {
-            File glslFile = new File(glsShaderFile);
-            File spvFile = new File(glsShaderFile + ".spv");
-            if (!spvFile.exists() || glslFile.lastModified() > spvFile.lastModified()) {
-                LOGGER.debug("Compiling [{}] to [{}]", glslFile.getPath(), spvFile.getPath());
-                String shaderCode = new String(Files.readAllBytes(glslFile.toPath()));
-
-                compiledShader = compileShader(shaderCode, shaderType);
-                Files.write(spvFile.toPath(), compiledShader);
-            } else {
-                LOGGER.debug("Shader [{}] already compiled. Loading compiled version: [{}]", glslFile.getPath(), spvFile.getPath());
+            byte[] compiledShader = loadCached(key);
+            if (compiledShader == null) {
+                LOGGER.debug("Compiling [{}]", fileName);
+                compiledShader = compile(fileName, source, shaderType);
+                storeCached(key, compiledShader);
             }
+            future.complete(compiledShader);
+            return compiledShader;
+        } catch (RuntimeException | Error excp) {
+            // Waiting requests must always be released, whatever the failure
+            results.remove(key);
+            future.completeExceptionally(excp);
+            throw excp;
+        }
+    }
+
+    private byte[] loadCached(String key) {
+        byte[] result = null;
+        if (cacheDir != null) {
+            Path cacheFile = cacheDir.resolve(key + ".spv");
+            if (Files.exists(cacheFile)) {
+                try {
+                    result = Files.readAllBytes(cacheFile);
+                    LOGGER.debug("Using cached shader [{}]", cacheFile);
+                } catch (IOException excp) {
+                    LOGGER.warn("Could not read shader cache file [{}]", cacheFile, excp);
+                }
+            }
+        }
+        return result;
+    }
+
+    private String preprocess(String fileName, String source, int shaderType) {
+        long options = Shaderc.shaderc_compile_options_initialize();
+        long result = Shaderc.shaderc_compile_into_preprocessed_text(threadCompiler.get(), source, shaderType,
+                fileName, "main", options);
+        try {
+            if (Shaderc.shaderc_result_get_compilation_status(result) != Shaderc.shaderc_compilation_status_success) {
+                throw new RuntimeException("Shader preprocessing failed: " + Shaderc.shaderc_result_get_error_message(result));
+            }
+            ByteBuffer buffer = Shaderc.shaderc_result_get_bytes(result);
+            byte[] text = new byte[buffer.remaining()];
+            buffer.get(text);
+            return new String(text, StandardCharsets.UTF_8);
+        } finally {
+            Shaderc.shaderc_result_release(result);
+            Shaderc.shaderc_compile_options_release(options);
+        }
+    }
+
+    // Cache files are named after their content key, so they are written once and never modified
+    private void storeCached(String key, byte[] compiledShader) {
+        if (cacheDir == null) {
+            return;
+        }
+        Path cacheFile = cacheDir.resolve(key + ".spv");
+        try {
+            EngineUtils.writeAtomically(cacheFile, ByteBuffer.wrap(compiledShader));
         } catch (IOException excp) {
-            throw new RuntimeException(excp);
+            LOGGER.warn("Could not write shader cache file [{}]", cacheFile, excp);
         }
     }
+
+    public record ShaderSource(String glslShaderFile, int shaderType) {
+    }
 }
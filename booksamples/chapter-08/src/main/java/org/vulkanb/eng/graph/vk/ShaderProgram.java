@@ -7,6 +7,7 @@ import org.lwjgl.vulkan.VkShaderModuleCreateInfo;
 import java.io.*;
 import java.nio.*;
 import java.nio.file.Files;
+import java.security.*;
 
 import static org.lwjgl.vulkan.VK11.*;
 import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
@@ -26,7 +27,8 @@ public class ShaderProgram {
             for (int i = 0; i < numModules; i++) {
                 byte[] moduleContents = Files.readAllBytes(new File(shaderModuleData[i].shaderSpvFile()).toPath());
                 long moduleHandle = createShaderModule(moduleContents);
-                shaderModules[i] = new ShaderModule(shaderModuleData[i].shaderStage(), moduleHandle);
+                shaderModules[i] = new ShaderModule(shaderModuleData[i].shaderStage(), moduleHandle,
+                        digest(moduleContents));
             }
         } catch (IOException excp) {
             LOGGER.error("Error reading shader files", excp);
@@ -34,6 +36,14 @@ public class ShaderProgram {
         }
     }
 
+    private static byte[] digest(byte[] code) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(code);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new RuntimeException(excp);
+        }
+    }
+
     public void cleanup() {
         for (ShaderModule shaderModule : shaderModules) {
             vkDestroyShaderModule(device.getVkDevice(), shaderModule.handle(), null);
@@ -60,7 +70,8 @@ public class ShaderProgram {
         return shaderModules;
     }
 
-    public record ShaderModule(int shaderStage, long handle) {
+    // The digest identifies the SPIR-V code, modules created from the same code are interchangeable
+    public record ShaderModule(int shaderStage, long handle, byte[] codeDigest) {
     }
 
     public record ShaderModuleData(int shaderStage, String shaderSpvFile) {
@@ -0,0 +1,106 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.vulkanb.eng.EngineUtils;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Watches the directories of a set of GLSL shaders and recompiles them, in a background thread, when they are
+// modified. Changes are reported through a flag polled by the render thread, which then rebuilds whatever depends on
+// the SPIR-V files. Shaders that fail to compile are logged and their previous SPIR-V file is left untouched
+public class ShaderWatcher {
+
+    // Editors usually write a file in several steps, events close in time are handled together
+    private static final long DEBOUNCE_MS = 100;
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final AtomicBoolean changed;
+    private final ExecutorService executor;
+    private final ShaderCompiler shaderCompiler;
+    private final Map<Path, ShaderCompiler.ShaderSource> shaderSources;
+    private final WatchService watchService;
+
+    public ShaderWatcher(ShaderCompiler shaderCompiler, ShaderCompiler.ShaderSource... shaderSources) {
+        LOGGER.debug("Creating shader watcher");
+        this.shaderCompiler = shaderCompiler;
+        this.shaderSources = new HashMap<>();
+        changed = new AtomicBoolean();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            Set<Path> dirs = new HashSet<>();
+            for (ShaderCompiler.ShaderSource shaderSource : shaderSources) {
+                Path path = Paths.get(shaderSource.glslShaderFile()).toAbsolutePath().normalize();
+                this.shaderSources.put(path, shaderSource);
+                if (dirs.add(path.getParent())) {
+                    path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY);
+                }
+            }
+        } catch (IOException excp) {
+            throw new RuntimeException("Could not watch shader directories", excp);
+        }
+        executor = EngineUtils.createThreadPool("shader-watcher", 1);
+        executor.execute(this::watch);
+    }
+
+    public void cleanup() {
+        LOGGER.debug("Destroying shader watcher");
+        try {
+            watchService.close();
+        } catch (IOException excp) {
+            LOGGER.warn("Could not close shader watch service", excp);
+        }
+        executor.shutdownNow();
+    }
+
+    private void collectChanges(WatchKey key, Set<ShaderCompiler.ShaderSource> modified) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Some events were lost, check all the shaders, unchanged ones are not recompiled
+                modified.addAll(shaderSources.values());
+            } else {
+                ShaderCompiler.ShaderSource shaderSource = shaderSources.get(dir.resolve((Path) event.context()));
+                if (shaderSource != null) {
+                    modified.add(shaderSource);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    // Returns true if any SPIR-V file has changed since the last call
+    public boolean pollChanges() {
+        return changed.getAndSet(false);
+    }
+
+    private void recompile(ShaderCompiler.ShaderSource shaderSource) {
+        try {
+            if (shaderCompiler.compileShaderIfChanged(shaderSource.glslShaderFile(), shaderSource.shaderType()).join()) {
+                LOGGER.info("Shader [{}] recompiled", shaderSource.glslShaderFile());
+                changed.set(true);
+            }
+        } catch (CompletionException excp) {
+            LOGGER.error("Error recompiling shader [{}], keeping previous version", shaderSource.glslShaderFile(),
+                    excp.getCause());
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                Set<ShaderCompiler.ShaderSource> modified = new LinkedHashSet<>();
+                WatchKey key = watchService.take();
+                do {
+                    collectChanges(key, modified);
+                } while ((key = watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null);
+                modified.forEach(this::recompile);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException excp) {
+            LOGGER.debug("Shader watcher stopped");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.lwjgl.util.vma.Vma.VMA_MEMORY_USAGE_CPU_ONLY;
+import static org.lwjgl.vulkan.VK11.*;
+
+public class StagingRing {
+
+    // Satisfies buffer to image copies of any texel or compressed block size used by the engine
+    private static final long ALIGNMENT = 16;
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final VulkanBuffer buffer;
+    private final long capacity;
+    private final Device device;
+    private final long mappedMemory;
+    private final Deque<Submission> submissions;
+    private long head;
+    private List<VulkanBuffer> pendingBuffers;
+    private long tail;
+
+    public StagingRing(Device device, long size) {
+        LOGGER.debug("Creating staging ring of [{}] bytes", size);
+        this.device = device;
+        capacity = alignUp(size);
+        buffer = new VulkanBuffer(device, capacity, VK_BUFFER_USAGE_TRANSFER_SRC_BIT, VMA_MEMORY_USAGE_CPU_ONLY,
+                VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
+        mappedMemory = buffer.map();
+        submissions = new ArrayDeque<>();
+        pendingBuffers = new ArrayList<>();
+    }
+
+    private static long alignUp(long value) {
+        return (value + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    public StagingRegion allocate(long size) {
+        // head and tail are absolute byte counts, the physical offset is their value modulo the capacity
+        long start = alignUp(head);
+        if (start % capacity + size > capacity) {
+            // Does not fit at the end, wrap around to the beginning
+            start = (start / capacity + 1) * capacity;
+        }
+        long end = start + size;
+        reclaim();
+        // Fences are only waited when the region fits once all the submitted data has been reclaimed, so requests
+        // bigger than the ring, or blocked by data not yet submitted, never stall on the transfers
+        long submittedEnd = submissions.isEmpty() ? tail : submissions.peekLast().end();
+        if (size <= capacity && end - submittedEnd <= capacity) {
+            while (end - tail > capacity) {
+                submissions.peekFirst().fence().fenceWait();
+                reclaim();
+            }
+        }
+
+        StagingRegion region;
+        if (size > capacity || end - tail > capacity) {
+            // Either bigger than the whole ring or the ring is full of not yet submitted data
+            LOGGER.debug("Staging ring exhausted, using a temporary buffer of [{}] bytes", size);
+            VulkanBuffer tmpBuffer = new VulkanBuffer(device, size, VK_BUFFER_USAGE_TRANSFER_SRC_BIT,
+                    VMA_MEMORY_USAGE_CPU_ONLY, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
+            pendingBuffers.add(tmpBuffer);
+            region = new StagingRegion(tmpBuffer.getBuffer(), 0, MemoryUtil.memByteBuffer(tmpBuffer.map(), (int) size));
+        } else {
+            long offset = start % capacity;
+            head = end;
+            region = new StagingRegion(buffer.getBuffer(), offset,
+                    MemoryUtil.memByteBuffer(mappedMemory + offset, (int) size));
+        }
+        return region;
+    }
+
+    public void cleanup() {
+        LOGGER.debug("Destroying staging ring");
+        for (Submission submission : submissions) {
+            submission.tmpBuffers().forEach(VulkanBuffer::cleanup);
+        }
+        submissions.clear();
+        pendingBuffers.forEach(VulkanBuffer::cleanup);
+        pendingBuffers.clear();
+        buffer.cleanup();
+    }
+
+    public void reclaim() {
+        while (!submissions.isEmpty() && submissions.peekFirst().fence().isSignaled()) {
+            Submission submission = submissions.removeFirst();
+            tail = submission.end();
+            submission.tmpBuffers().forEach(VulkanBuffer::cleanup);
+        }
+    }
+
+    // Regions allocated since the previous call are reclaimed once the fence signals, it must stay alive until then
+    public void submitted(Fence fence) {
+        submissions.addLast(new Submission(fence, head, pendingBuffers));
+        pendingBuffers = new ArrayList<>();
+    }
+
+    public record StagingRegion(long vkBuffer, long offset, ByteBuffer data) {
+    }
+
+    private record Submission(Fence fence, long end, List<VulkanBuffer> tmpBuffers) {
+    }
+}
@@ -16,9 +16,10 @@ public class SwapChain {
     private int currentFrame;
     private Device device;
     private ImageView[] imageViews;
+    // Signaled when rendering to each image completes, presentation waits for them
+    private Semaphore[] renderCompleteSemaphores;
     private SurfaceFormat surfaceFormat;
     private VkExtent2D swapChainExtent;
-    private SyncSemaphores[] syncSemaphoresList;
     private long vkSwapChain;
 
     public SwapChain(Device device, Surface surface, Window window, int requestedImages, boolean vsync) {
@@ -64,20 +65,21 @@ public class SwapChain {
 
             imageViews = createImageViews(stack, device, vkSwapChain, surfaceFormat.imageFormat);
             numImages = imageViews.length;
-            syncSemaphoresList = new SyncSemaphores[numImages];
+            renderCompleteSemaphores = new Semaphore[numImages];
             for (int i = 0; i < numImages; i++) {
-                syncSemaphoresList[i] = new SyncSemaphores(new Semaphore(device), new Semaphore(device));
+                renderCompleteSemaphores[i] = new Semaphore(device);
             }
             currentFrame = 0;
         }
     }
 
-    public boolean acquireNextImage() {
+    // The semaphore is signaled when the image can be rendered to, it must not have pending operations
+    public boolean acquireNextImage(Semaphore imgAcquisitionSemaphore) {
         boolean resize = false;
         try (MemoryStack stack = MemoryStack.stackPush()) {
             IntBuffer ip = stack.mallocInt(1);
             int err = KHRSwapchain.vkAcquireNextImageKHR(device.getVkDevice(), vkSwapChain, ~0L,
-                    syncSemaphoresList[currentFrame].imgAcquisitionSemaphores().getVkSemaphore(), MemoryUtil.NULL, ip);
+                    imgAcquisitionSemaphore.getVkSemaphore(), MemoryUtil.NULL, ip);
             if (err == KHRSwapchain.VK_ERROR_OUT_OF_DATE_KHR) {
                 resize = true;
             } else if (err == KHRSwapchain.VK_SUBOPTIMAL_KHR) {
@@ -163,9 +165,7 @@ public class SwapChain {
         int size = imageViews != null ? imageViews.length : 0;
         for (int i = 0; i < size; i++) {
             imageViews[i].cleanup();
-            SyncSemaphores syncSemaphores = syncSemaphoresList[i];
-            syncSemaphores.imgAcquisitionSemaphores().cleanup();
-            syncSemaphores.renderCompleteSemaphores().cleanup();
+            renderCompleteSemaphores[i].cleanup();
         }
 
         KHRSwapchain.vkDestroySwapchainKHR(device.getVkDevice(), vkSwapChain, null);
@@ -207,6 +207,10 @@ public class SwapChain {
         return imageViews.length;
     }
 
+    public Semaphore getRenderCompleteSemaphore() {
+        return renderCompleteSemaphores[currentFrame];
+    }
+
     public SurfaceFormat getSurfaceFormat() {
         return surfaceFormat;
     }
@@ -215,10 +219,6 @@ public class SwapChain {
         return swapChainExtent;
     }
 
-    public SyncSemaphores[] getSyncSemaphoresList() {
-        return syncSemaphoresList;
-    }
-
     public long getVkSwapChain() {
         return vkSwapChain;
     }
@@ -229,7 +229,7 @@ public class SwapChain {
             VkPresentInfoKHR present = VkPresentInfoKHR.callocStack(stack)
                     .sType(KHRSwapchain.VK_STRUCTURE_TYPE_PRESENT_INFO_KHR)
                     .pWaitSemaphores(stack.longs(
-                            syncSemaphoresList[currentFrame].renderCompleteSemaphores().getVkSemaphore()))
+                            renderCompleteSemaphores[currentFrame].getVkSemaphore()))
                     .swapchainCount(1)
                     .pSwapchains(stack.longs(vkSwapChain))
                     .pImageIndices(stack.ints(currentFrame));
@@ -243,13 +243,9 @@ public class SwapChain {
                 throw new RuntimeException("Failed to present KHR: " + err);
             }
         }
-        currentFrame = (currentFrame + 1) % imageViews.length;
         return resize;
     }
 
     record SurfaceFormat(int imageFormat, int colorSpace) {
     }
-
-    public record SyncSemaphores(Semaphore imgAcquisitionSemaphores, Semaphore renderCompleteSemaphores) {
-    }
 }
@@ -1,105 +1,88 @@
 package org.vulkanb.eng.graph.vk;
 
 import org.apache.logging.log4j.*;
-import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 
-import java.nio.*;
+import java.nio.ByteBuffer;
 
-import static org.lwjgl.stb.STBImage.*;
 import static org.lwjgl.vulkan.VK11.*;
-import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
 
 public class Texture {
 
-    // RGBA
-    private static final int BYTES_PER_PIXEL = 4;
     private static final Logger LOGGER = LogManager.getLogger();
     private String fileName;
     private int height;
     private Image image;
     private ImageView imageView;
+    private int[] levelOffsets;
     private int mipLevels;
-    private VulkanBuffer tmpBuffer;
+    private long size;
+    private TextureData textureData;
     private int width;
 
     public Texture(Device device, String fileName, int imageFormat) {
-        LOGGER.debug("Creating texture [{}]", fileName);
-        this.fileName = fileName;
-        ByteBuffer buf;
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            IntBuffer w = stack.mallocInt(1);
-            IntBuffer h = stack.mallocInt(1);
-            IntBuffer channels = stack.mallocInt(1);
-
-            buf = stbi_load(fileName, w, h, channels, 4);
-            if (buf == null) {
-                throw new RuntimeException("Image file [" + fileName + "] not loaded: " + stbi_failure_reason());
-            }
-
-            width = w.get();
-            height = h.get();
-            mipLevels = 1;
-
-            tmpBuffer = createImage(stack, device, buf, imageFormat);
-            imageView = new ImageView(device, image.getVkImage(), image.getFormat(), VK_IMAGE_ASPECT_COLOR_BIT, mipLevels);
-        }
+        this(device, fileName, TextureData.load(fileName), imageFormat);
+    }
 
-        stbi_image_free(buf);
+    // The texture data may have been loaded from a different file, such as a pre-compressed version of the texture
+    public Texture(Device device, String fileName, TextureData textureData, int imageFormat) {
+        LOGGER.debug("Creating texture [{}] from [{}]", fileName, textureData.getFileName());
+        this.fileName = fileName;
+        this.textureData = textureData;
+        width = textureData.getWidth();
+        height = textureData.getHeight();
+        mipLevels = textureData.getMipLevels();
+        size = textureData.getData().remaining();
+        levelOffsets = textureData.getLevelOffsets();
+        int format = textureData.getFormat() != VK_FORMAT_UNDEFINED ? textureData.getFormat() : imageFormat;
+
+        image = new Image(device, width, height, format,
+                VK_IMAGE_USAGE_TRANSFER_SRC_BIT | VK_IMAGE_USAGE_TRANSFER_DST_BIT | VK_IMAGE_USAGE_SAMPLED_BIT,
+                mipLevels, 1);
+        imageView = new ImageView(device, image.getVkImage(), image.getFormat(), VK_IMAGE_ASPECT_COLOR_BIT, mipLevels);
     }
 
     public void cleanup() {
-        cleanupTmpBuffer();
+        freeTextureData();
         imageView.cleanup();
         image.cleanup();
     }
 
-    public void cleanupTmpBuffer() {
-        if (tmpBuffer != null) {
-            tmpBuffer.cleanup();
-            tmpBuffer = null;
+    void copyBufferToImage(MemoryStack stack, CommandBuffer cmd, StagingRing.StagingRegion stagingRegion) {
+
+        VkBufferImageCopy.Buffer regions = VkBufferImageCopy.callocStack(mipLevels, stack);
+        int levelWidth = width;
+        int levelHeight = height;
+        for (int level = 0; level < mipLevels; level++) {
+            int mipLevel = level;
+            int regionWidth = levelWidth;
+            int regionHeight = levelHeight;
+            regions.get(level)
+                    .bufferOffset(stagingRegion.offset() + levelOffsets[level])
+                    .bufferRowLength(0)
+                    .bufferImageHeight(0)
+                    .imageSubresource(it ->
+                            it.aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
+                                    .mipLevel(mipLevel)
+                                    .baseArrayLayer(0)
+                                    .layerCount(1)
+                    )
+                    .imageOffset(it -> it.x(0).y(0).z(0))
+                    .imageExtent(it -> it.width(regionWidth).height(regionHeight).depth(1));
+            levelWidth = Math.max(1, levelWidth / 2);
+            levelHeight = Math.max(1, levelHeight / 2);
         }
-    }
 
-    void copyBufferToImage(MemoryStack stack, CommandBuffer cmd, VulkanBuffer bufferData) {
-
-        VkBufferImageCopy.Buffer region = VkBufferImageCopy.callocStack(1, stack)
-                .bufferOffset(0)
-                .bufferRowLength(0)
-                .bufferImageHeight(0)
-                .imageSubresource(it ->
-                        it.aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
-                                .mipLevel(0)
-                                .baseArrayLayer(0)
-                                .layerCount(1)
-                )
-                .imageOffset(it -> it.x(0).y(0).z(0))
-                .imageExtent(it -> it.width(width).height(height).depth(1));
-
-        vkCmdCopyBufferToImage(cmd.getVkCommandBuffer(), bufferData.getBuffer(), image.getVkImage(),
-                VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, region);
+        vkCmdCopyBufferToImage(cmd.getVkCommandBuffer(), stagingRegion.vkBuffer(), image.getVkImage(),
+                VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, regions);
     }
 
-    private VulkanBuffer createImage(MemoryStack stack, Device device, ByteBuffer data, int imageFormat) {
-        int size = width * height * BYTES_PER_PIXEL;
-        VulkanBuffer vulkanBuffer = new VulkanBuffer(device, size, VK_BUFFER_USAGE_TRANSFER_SRC_BIT,
-                VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
-        PointerBuffer pp = stack.mallocPointer(1);
-        vkCheck(vkMapMemory(device.getVkDevice(), vulkanBuffer.getMemory(), 0,
-                vulkanBuffer.getAllocationSize(), 0, pp), "Failed to map memory");
-
-        ByteBuffer buffer = pp.getByteBuffer(size);
-        buffer.put(data);
-        data.flip();
-
-        vkUnmapMemory(device.getVkDevice(), vulkanBuffer.getMemory());
-
-        image = new Image(device, width, height, imageFormat,
-                VK_IMAGE_USAGE_TRANSFER_SRC_BIT | VK_IMAGE_USAGE_TRANSFER_DST_BIT | VK_IMAGE_USAGE_SAMPLED_BIT,
-                mipLevels, 1);
-
-        return vulkanBuffer;
+    private void freeTextureData() {
+        if (textureData != null) {
+            textureData.cleanup();
+            textureData = null;
+        }
     }
 
     public String getFileName() {
@@ -110,6 +93,14 @@ public class Texture {
         return imageView;
     }
 
+    public int getMipLevels() {
+        return mipLevels;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
     private void recordImageTransition(MemoryStack stack, CommandBuffer cmd, int oldLayout, int newLayout) {
 
         VkImageMemoryBarrier.Buffer barrier = VkImageMemoryBarrier.callocStack(1, stack)
@@ -135,12 +126,6 @@ public class Texture {
 
             sourceStage = VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT;
             destinationStage = VK_PIPELINE_STAGE_TRANSFER_BIT;
-        } else if (oldLayout == VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL && newLayout == VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL) {
-            barrier.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT);
-            barrier.dstAccessMask(VK_ACCESS_SHADER_READ_BIT);
-
-            sourceStage = VK_PIPELINE_STAGE_TRANSFER_BIT;
-            destinationStage = VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT;
         } else {
             throw new RuntimeException("Unsupported layout transition");
         }
@@ -154,14 +139,21 @@ public class Texture {
                 barrier);
     }
 
-    public void recordTextureTransition(CommandBuffer cmd) {
-        if (tmpBuffer != null) {
-            LOGGER.debug("Recording transition for texture [{}]", fileName);
+    // The copy runs on the transfer queue, the batch hands the image over to the graphics queue in shader read layout
+    public void recordTextureUpload(AsyncUploader.Batch batch) {
+        if (textureData != null) {
+            LOGGER.debug("Recording upload for texture [{}]", fileName);
+            ByteBuffer data = textureData.getData();
+            StagingRing.StagingRegion stagingRegion = batch.getStagingRing().allocate(data.remaining());
+            stagingRegion.data().put(data);
+            freeTextureData();
+            CommandBuffer cmd = batch.getTransferCmd();
             try (MemoryStack stack = MemoryStack.stackPush()) {
                 recordImageTransition(stack, cmd, VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL);
-                copyBufferToImage(stack, cmd, tmpBuffer);
-                recordImageTransition(stack, cmd, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL);
+                copyBufferToImage(stack, cmd, stagingRegion);
             }
+            batch.releaseImage(image.getVkImage(), mipLevels, VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT,
+                    VK_ACCESS_SHADER_READ_BIT);
         } else {
             LOGGER.debug("Texture [{}] has already been transitioned", fileName);
         }
@@ -0,0 +1,113 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.lwjgl.system.*;
+
+import java.nio.*;
+
+import static org.lwjgl.stb.STBImage.*;
+import static org.lwjgl.vulkan.VK11.VK_FORMAT_UNDEFINED;
+
+public class TextureData {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final String fileName;
+    private final int format;
+    private final int height;
+    private final int width;
+    private int[] levelOffsets;
+    private ByteBuffer mipChain;
+    private ByteBuffer pixels;
+
+    private TextureData(String fileName, int width, int height, ByteBuffer pixels) {
+        this.fileName = fileName;
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+        format = VK_FORMAT_UNDEFINED;
+        levelOffsets = new int[]{0};
+    }
+
+    TextureData(String fileName, int format, int width, int height, ByteBuffer mipChain, int[] levelOffsets) {
+        this.fileName = fileName;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.mipChain = mipChain;
+        this.levelOffsets = levelOffsets;
+    }
+
+    // Does not use any Vulkan resource, so it can be safely called from any thread
+    public static TextureData load(String fileName) {
+        if (fileName.endsWith(Ktx2.FILE_EXTENSION)) {
+            return Ktx2.read(fileName);
+        }
+        LOGGER.debug("Decoding texture [{}]", fileName);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer channels = stack.mallocInt(1);
+
+            ByteBuffer pixels = stbi_load(fileName, w, h, channels, 4);
+            if (pixels == null) {
+                throw new RuntimeException("Image file [" + fileName + "] not loaded: " + stbi_failure_reason());
+            }
+            return new TextureData(fileName, w.get(), h.get(), pixels);
+        }
+    }
+
+    public void cleanup() {
+        if (pixels != null) {
+            stbi_image_free(pixels);
+            pixels = null;
+        }
+        if (mipChain != null) {
+            MemoryUtil.memFree(mipChain);
+            mipChain = null;
+        }
+    }
+
+    public void generateMipmaps(boolean srgb) {
+        // Block compressed textures carry their own mip chain
+        if (pixels == null || format != VK_FORMAT_UNDEFINED) {
+            return;
+        }
+        int levels = MipmapGenerator.getMipLevels(width, height);
+        ByteBuffer chain = MemoryUtil.memAlloc(MipmapGenerator.getMipChainSize(width, height, levels));
+        MipmapGenerator.generate(pixels, width, height, levels, srgb, chain);
+        stbi_image_free(pixels);
+        pixels = null;
+        mipChain = chain;
+        levelOffsets = MipmapGenerator.getLevelOffsets(width, height, levels);
+    }
+
+    // All the mip levels, each one starting at its level offset
+    public ByteBuffer getData() {
+        return mipChain != null ? mipChain : pixels;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    // VK_FORMAT_UNDEFINED for decoded RGBA images, which can be created with any format of that layout
+    public int getFormat() {
+        return format;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int[] getLevelOffsets() {
+        return levelOffsets;
+    }
+
+    public int getMipLevels() {
+        return levelOffsets.length;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+}
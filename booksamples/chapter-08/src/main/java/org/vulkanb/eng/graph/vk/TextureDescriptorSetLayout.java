@@ -32,6 +32,8 @@ public class TextureDescriptorSetLayout extends DescriptorSetLayout {
             vkCheck(vkCreateDescriptorSetLayout(device.getVkDevice(), layoutInfo, null, lp),
                     "Failed to create descriptor set layout");
             super.vkDescriptorLayout = lp.get(0);
+            setLayoutInfo(0, layoutBindings, null);
+            addDescriptorTypeCount(VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER, 1);
         }
     }
 }
@@ -0,0 +1,74 @@
+package org.vulkanb.eng.graph.vk;
+
+import org.apache.logging.log4j.*;
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.lwjgl.util.vma.Vma.VMA_MEMORY_USAGE_CPU_TO_GPU;
+import static org.lwjgl.vulkan.VK11.*;
+
+// Host visible uniform buffer, persistently mapped, split in one region per frame in flight. Transient data is bump
+// allocated from the region of a frame and read through dynamic uniform buffer descriptors, using the returned
+// offsets as dynamic offsets. Allocation is lock free, so it can be used from the command recording threads
+public class TransientUniformAllocator {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final long alignment;
+    private final VulkanBuffer buffer;
+    private final ByteBuffer data;
+    private final long frameSize;
+    private final AtomicLong[] offsets;
+
+    public TransientUniformAllocator(Device device, int numFrames, long frameSize) {
+        alignment = device.getPhysicalDevice().getVkPhysicalDeviceProperties().limits()
+                .minUniformBufferOffsetAlignment();
+        this.frameSize = align(frameSize);
+        LOGGER.debug("Creating transient uniform allocator, [{}] frames of [{}] bytes", numFrames, this.frameSize);
+        buffer = new VulkanBuffer(device, numFrames * this.frameSize, VK_BUFFER_USAGE_UNIFORM_BUFFER_BIT,
+                VMA_MEMORY_USAGE_CPU_TO_GPU, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
+        data = MemoryUtil.memByteBuffer(buffer.map(), (int) buffer.getRequestedSize());
+        offsets = new AtomicLong[numFrames];
+        for (int i = 0; i < numFrames; i++) {
+            offsets[i] = new AtomicLong();
+        }
+    }
+
+    private long align(long size) {
+        return (size + alignment - 1) / alignment * alignment;
+    }
+
+    // Returns the offset, from the start of the buffer, of a block of the given size in the region of the frame
+    public int allocate(int frameIdx, int size) {
+        long alignedSize = align(size);
+        long offset = offsets[frameIdx].getAndAdd(alignedSize);
+        if (offset + alignedSize > frameSize) {
+            throw new RuntimeException("Transient uniform memory exhausted, frame size [" + frameSize + "] bytes");
+        }
+        return (int) (frameIdx * frameSize + offset);
+    }
+
+    public void cleanup() {
+        LOGGER.debug("Destroying transient uniform allocator");
+        buffer.cleanup();
+    }
+
+    public long getBuffer() {
+        return buffer.getBuffer();
+    }
+
+    public void putInt(int offset, int value) {
+        data.putInt(offset, value);
+    }
+
+    public void putMatrix(int offset, Matrix4f matrix) {
+        matrix.get(offset, data);
+    }
+
+    // Discards all the allocations of the frame, the GPU must no longer be using them
+    public void reset(int frameIdx) {
+        offsets[frameIdx].set(0);
+    }
+}
@@ -0,0 +1,20 @@
+package org.vulkanb.eng.graph.vk;
+
+// Completion handle of an upload submitted through the AsyncUploader. It is polled from the render loop, the
+// uploaded resources can be used once it reports completion
+public class UploadTicket {
+
+    private volatile boolean complete;
+
+    UploadTicket() {
+        // Created by the uploader
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    void setComplete() {
+        complete = true;
+    }
+}
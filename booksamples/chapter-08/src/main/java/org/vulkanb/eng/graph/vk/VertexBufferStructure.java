@@ -7,15 +7,18 @@ import static org.lwjgl.vulkan.VK11.*;
 public class VertexBufferStructure {
 
     public static final int TEXT_COORD_COMPONENTS = 2;
-    private static final int NUMBER_OF_ATTRIBUTES = 2;
+    // Model matrices are passed per instance as four vec4 attributes
+    private static final int INSTANCE_ATTRIBUTES = 4;
+    private static final int NUMBER_OF_ATTRIBUTES = 2 + INSTANCE_ATTRIBUTES;
     private static final int POSITION_COMPONENTS = 3;
+    public static final int SIZE_IN_BYTES = (POSITION_COMPONENTS + TEXT_COORD_COMPONENTS) * GraphConstants.FLOAT_LENGTH;
     private VkPipelineVertexInputStateCreateInfo vi;
     private VkVertexInputAttributeDescription.Buffer viAttrs;
     private VkVertexInputBindingDescription.Buffer viBindings;
 
     public VertexBufferStructure() {
         viAttrs = VkVertexInputAttributeDescription.calloc(NUMBER_OF_ATTRIBUTES);
-        viBindings = VkVertexInputBindingDescription.calloc(1);
+        viBindings = VkVertexInputBindingDescription.calloc(2);
         vi = VkPipelineVertexInputStateCreateInfo.calloc();
 
         int i = 0;
@@ -34,12 +37,26 @@ public class VertexBufferStructure {
                 .format(VK_FORMAT_R32G32B32_SFLOAT)
                 .offset(POSITION_COMPONENTS * GraphConstants.FLOAT_LENGTH);
 
+        // Model matrix columns
+        for (int j = 0; j < INSTANCE_ATTRIBUTES; j++) {
+            i++;
+            viAttrs.get(i)
+                    .binding(1)
+                    .location(i)
+                    .format(VK_FORMAT_R32G32B32A32_SFLOAT)
+                    .offset(j * 4 * GraphConstants.FLOAT_LENGTH);
+        }
+
         viBindings.get(0)
                 .binding(0)
-                .stride(POSITION_COMPONENTS * GraphConstants.FLOAT_LENGTH +
-                        TEXT_COORD_COMPONENTS * GraphConstants.FLOAT_LENGTH)
+                .stride(SIZE_IN_BYTES)
                 .inputRate(VK_VERTEX_INPUT_RATE_VERTEX);
 
+        viBindings.get(1)
+                .binding(1)
+                .stride(GraphConstants.MAT4X4_SIZE)
+                .inputRate(VK_VERTEX_INPUT_RATE_INSTANCE);
+
         vi
                 .sType(VK_STRUCTURE_TYPE_PIPELINE_VERTEX_INPUT_STATE_CREATE_INFO)
                 .pVertexBindingDescriptions(viBindings)
@@ -1,70 +1,78 @@
 package org.vulkanb.eng.graph.vk;
 
-import org.lwjgl.system.MemoryStack;
-import org.lwjgl.vulkan.*;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.*;
+import org.lwjgl.util.vma.VmaAllocationCreateInfo;
+import org.lwjgl.vulkan.VkBufferCreateInfo;
 
 import java.nio.LongBuffer;
 
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.util.vma.Vma.*;
 import static org.lwjgl.vulkan.VK11.*;
 import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
 
 public class VulkanBuffer {
 
-    private long allocationSize;
+    private long allocation;
     private long buffer;
     private Device device;
-    private long memory;
+    private long mappedMemory;
+    private PointerBuffer pb;
     private long requestedSize;
 
-    public VulkanBuffer(Device device, long size, int usage, int reqMask) {
+    public VulkanBuffer(Device device, long size, int bufferUsage, int memoryUsage, int requiredFlags) {
         this.device = device;
         requestedSize = size;
+        mappedMemory = NULL;
         try (MemoryStack stack = MemoryStack.stackPush()) {
             VkBufferCreateInfo bufferCreateInfo = VkBufferCreateInfo.callocStack(stack)
                     .sType(VK_STRUCTURE_TYPE_BUFFER_CREATE_INFO)
                     .size(size)
-                    .usage(usage)
+                    .usage(bufferUsage)
                     .sharingMode(VK_SHARING_MODE_EXCLUSIVE);
-            LongBuffer lp = stack.mallocLong(1);
-            vkCheck(vkCreateBuffer(device.getVkDevice(), bufferCreateInfo, null, lp), "Failed to create vertices buffer");
-            buffer = lp.get(0);
-
-            VkMemoryRequirements memReqs = VkMemoryRequirements.mallocStack(stack);
-            vkGetBufferMemoryRequirements(device.getVkDevice(), buffer, memReqs);
-
-            VkMemoryAllocateInfo memAlloc = VkMemoryAllocateInfo.callocStack(stack)
-                    .sType(VK_STRUCTURE_TYPE_MEMORY_ALLOCATE_INFO)
-                    .allocationSize(memReqs.size())
-                    .memoryTypeIndex(VulkanUtils.memoryTypeFromProperties(device.getPhysicalDevice(),
-                            memReqs.memoryTypeBits(), reqMask));
 
-            vkCheck(vkAllocateMemory(device.getVkDevice(), memAlloc, null, lp), "Failed to allocate memory");
-            allocationSize = memAlloc.allocationSize();
-            memory = lp.get(0);
+            VmaAllocationCreateInfo allocInfo = VmaAllocationCreateInfo.callocStack(stack)
+                    .requiredFlags(requiredFlags)
+                    .usage(memoryUsage);
 
-            vkCheck(vkBindBufferMemory(device.getVkDevice(), buffer, memory, 0), "Failed to bind buffer memory");
+            PointerBuffer pAllocation = stack.callocPointer(1);
+            LongBuffer lp = stack.mallocLong(1);
+            vkCheck(vmaCreateBuffer(device.getMemoryAllocator().getVmaAllocator(), bufferCreateInfo, allocInfo, lp,
+                    pAllocation, null), "Failed to create buffer");
+            buffer = lp.get(0);
+            allocation = pAllocation.get(0);
+            pb = MemoryUtil.memAllocPointer(1);
         }
     }
 
     public void cleanup() {
-        vkDestroyBuffer(device.getVkDevice(), buffer, null);
-        vkFreeMemory(device.getVkDevice(), memory, null);
-    }
-
-    public long getAllocationSize() {
-        return allocationSize;
+        MemoryUtil.memFree(pb);
+        unMap();
+        vmaDestroyBuffer(device.getMemoryAllocator().getVmaAllocator(), buffer, allocation);
     }
 
     public long getBuffer() {
         return buffer;
     }
 
-    public long getMemory() {
-        return memory;
-    }
-
     public long getRequestedSize() {
         return requestedSize;
     }
 
-}
\ No newline at end of file
+    public long map() {
+        if (mappedMemory == NULL) {
+            vkCheck(vmaMapMemory(device.getMemoryAllocator().getVmaAllocator(), allocation, pb),
+                    "Failed to map allocation");
+            mappedMemory = pb.get(0);
+        }
+        return mappedMemory;
+    }
+
+    public void unMap() {
+        if (mappedMemory != NULL) {
+            vmaUnmapMemory(device.getMemoryAllocator().getVmaAllocator(), allocation);
+            mappedMemory = NULL;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.vulkanb.eng.graph.vk;
 
-import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.VkBufferCopy;
 import org.vulkanb.eng.graph.TextureCache;
@@ -9,155 +8,127 @@ import org.vulkanb.eng.scene.*;
 import java.nio.*;
 
 import static org.lwjgl.vulkan.VK11.*;
-import static org.vulkanb.eng.graph.vk.VulkanUtils.vkCheck;
 
 public class VulkanMesh {
 
+    private GeometryArena.ArenaRange arenaRange;
+    private int firstIndex;
     private String id;
-    private VulkanBuffer indicesBuffer;
     private int indicesCount;
     private String textureId;
-    private VulkanBuffer verticesBuffer;
+    private int vertexOffset;
 
-    public VulkanMesh(String id, VulkanBuffer verticesBuffer, VulkanBuffer indicesBuffer, int indicesCount, String textureId) {
+    public VulkanMesh(String id, GeometryArena.ArenaRange arenaRange, int vertexOffset, int firstIndex,
+                      int indicesCount, String textureId) {
         this.id = id;
-        this.verticesBuffer = verticesBuffer;
-        this.indicesBuffer = indicesBuffer;
+        this.arenaRange = arenaRange;
+        this.vertexOffset = vertexOffset;
+        this.firstIndex = firstIndex;
         this.indicesCount = indicesCount;
         this.textureId = textureId;
+        arenaRange.acquire();
     }
 
-    private static TransferBuffers createIndicesBuffers(Device device, MeshData meshData) {
-        int[] indices = meshData.indices();
-        int numIndices = indices.length;
-        int bufferSize = numIndices * GraphConstants.INT_LENGTH;
+    // Records the uploads of the meshes in the batch, they can be used once the batch has been completed
+    public static VulkanMesh[] loadMeshes(TextureCache textureCache, Device device, AsyncUploader.Batch batch,
+                                          GeometryArena geometryArena, MeshData[] meshDataList) {
+        int numMeshes = meshDataList != null ? meshDataList.length : 0;
+        VulkanMesh[] meshes = new VulkanMesh[numMeshes];
+        if (numMeshes == 0) {
+            return meshes;
+        }
 
-        VulkanBuffer srcBuffer = new VulkanBuffer(device, bufferSize,
-                VK_BUFFER_USAGE_TRANSFER_SRC_BIT, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
-        VulkanBuffer dstBuffer = new VulkanBuffer(device, bufferSize,
-                VK_BUFFER_USAGE_TRANSFER_DST_BIT | VK_BUFFER_USAGE_INDEX_BUFFER_BIT, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT);
+        // All the meshes share a single contiguous range of the arena
+        int numVertices = 0;
+        int numIndices = 0;
+        for (MeshData meshData : meshDataList) {
+            numVertices += meshData.positions().length / 3;
+            numIndices += meshData.indices().length;
+        }
+        GeometryArena.ArenaRange arenaRange = geometryArena.allocate(numVertices, numIndices);
+        for (MeshData meshData : meshDataList) {
+            textureCache.prefetch(meshData.material().getTexturePath());
+        }
 
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            PointerBuffer pp = stack.mallocPointer(1);
-            vkCheck(vkMapMemory(device.getVkDevice(), srcBuffer.getMemory(), 0, srcBuffer.getAllocationSize(), 0, pp),
-                    "Failed to map memory");
+        StagingRing stagingRing = batch.getStagingRing();
+        StagingRing.StagingRegion verticesRegion = stagingRing.allocate(
+                (long) numVertices * VertexBufferStructure.SIZE_IN_BYTES);
+        StagingRing.StagingRegion indicesRegion = stagingRing.allocate(
+                (long) numIndices * GraphConstants.INT_LENGTH);
+        FloatBuffer verticesData = verticesRegion.data().asFloatBuffer();
+        IntBuffer indicesData = indicesRegion.data().asIntBuffer();
+
+        int vertexOffset = arenaRange.getVertexOffset();
+        int firstIndex = arenaRange.getFirstIndex();
+        for (int i = 0; i < numMeshes; i++) {
+            MeshData meshData = meshDataList[i];
+            writeVertices(verticesData, meshData);
+            indicesData.put(meshData.indices());
+
+            Material material = meshData.material();
+            Texture texture = textureCache.createTexture(device, material.getTexturePath(),
+                    VK_FORMAT_R8G8B8A8_SRGB);
+
+            meshes[i] = new VulkanMesh(meshData.id(), arenaRange, vertexOffset, firstIndex,
+                    meshData.indices().length, texture.getFileName());
+            vertexOffset += meshData.positions().length / 3;
+            firstIndex += meshData.indices().length;
+            texture.recordTextureUpload(batch);
+        }
 
-            IntBuffer data = pp.getIntBuffer(0, numIndices);
-            data.put(indices);
+        recordTransferCommand(batch, verticesRegion, geometryArena.getVerticesBuffer(),
+                (long) arenaRange.getVertexOffset() * VertexBufferStructure.SIZE_IN_BYTES,
+                VK_ACCESS_VERTEX_ATTRIBUTE_READ_BIT);
+        recordTransferCommand(batch, indicesRegion, geometryArena.getIndicesBuffer(),
+                (long) arenaRange.getFirstIndex() * GraphConstants.INT_LENGTH, VK_ACCESS_INDEX_READ_BIT);
 
-            vkUnmapMemory(device.getVkDevice(), srcBuffer.getMemory());
-        }
+        return meshes;
+    }
 
-        return new TransferBuffers(srcBuffer, dstBuffer);
+    private static void recordTransferCommand(AsyncUploader.Batch batch, StagingRing.StagingRegion stagingRegion,
+                                              VulkanBuffer dstBuffer, long dstOffset, int dstAccessMask) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            long size = stagingRegion.data().capacity();
+            VkBufferCopy.Buffer copyRegion = VkBufferCopy.callocStack(1, stack)
+                    .srcOffset(stagingRegion.offset()).dstOffset(dstOffset).size(size);
+            vkCmdCopyBuffer(batch.getTransferCmd().getVkCommandBuffer(), stagingRegion.vkBuffer(),
+                    dstBuffer.getBuffer(), copyRegion);
+            batch.releaseBuffer(dstBuffer.getBuffer(), dstOffset, size, VK_PIPELINE_STAGE_VERTEX_INPUT_BIT,
+                    dstAccessMask);
+        }
     }
 
-    private static TransferBuffers createVerticesBuffers(Device device, MeshData meshData) {
+    private static void writeVertices(FloatBuffer data, MeshData meshData) {
         float[] positions = meshData.positions();
         float[] textCoords = meshData.textCoords();
         if (textCoords == null || textCoords.length == 0) {
             textCoords = new float[(positions.length / 3) * 2];
         }
-        int numElements = positions.length + textCoords.length;
-        int bufferSize = numElements * GraphConstants.FLOAT_LENGTH;
-
-        VulkanBuffer srcBuffer = new VulkanBuffer(device, bufferSize,
-                VK_BUFFER_USAGE_TRANSFER_SRC_BIT, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
-        VulkanBuffer dstBuffer = new VulkanBuffer(device, bufferSize,
-                VK_BUFFER_USAGE_TRANSFER_DST_BIT | VK_BUFFER_USAGE_VERTEX_BUFFER_BIT, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT);
-
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            PointerBuffer pp = stack.mallocPointer(1);
-            vkCheck(vkMapMemory(device.getVkDevice(), srcBuffer.getMemory(), 0, srcBuffer.getAllocationSize(), 0, pp),
-                    "Failed to map memory");
-
-            int rows = positions.length / 3;
-            FloatBuffer data = pp.getFloatBuffer(0, numElements);
-            for (int row = 0; row < rows; row++) {
-                int startPos = row * 3;
-                int startTextCoord = row * 2;
-                data.put(positions[startPos]);
-                data.put(positions[startPos + 1]);
-                data.put(positions[startPos + 2]);
-                data.put(textCoords[startTextCoord]);
-                data.put(textCoords[startTextCoord + 1]);
-            }
-
-            vkUnmapMemory(device.getVkDevice(), srcBuffer.getMemory());
-        }
 
-        return new TransferBuffers(srcBuffer, dstBuffer);
-    }
-
-    public static VulkanMesh[] loadMeshes(TextureCache textureCache, CommandPool commandPool, Queue queue, MeshData[] meshDataList) {
-        int numMeshes = meshDataList != null ? meshDataList.length : 0;
-        VulkanMesh[] meshes = new VulkanMesh[numMeshes];
-
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            Device device = commandPool.getDevice();
-            CommandBuffer cmd = new CommandBuffer(commandPool, true, true);
-            cmd.beginRecording();
-
-            VulkanBuffer[] positionTransferBuffers = new VulkanBuffer[numMeshes];
-            VulkanBuffer[] indicesTransferBuffers = new VulkanBuffer[numMeshes];
-            for (int i = 0; i < numMeshes; i++) {
-                MeshData meshData = meshDataList[i];
-                TransferBuffers verticesBuffers = createVerticesBuffers(device, meshData);
-                TransferBuffers indicesBuffers = createIndicesBuffers(device, meshData);
-
-                positionTransferBuffers[i] = verticesBuffers.srcBuffer();
-                indicesTransferBuffers[i] = indicesBuffers.srcBuffer();
-
-                Material material = meshData.material();
-                Texture texture = textureCache.createTexture(device, material.getTexturePath(),
-                        VK_FORMAT_R8G8B8A8_SRGB);
-
-                meshes[i] = new VulkanMesh(meshData.id(), verticesBuffers.dstBuffer(), indicesBuffers.dstBuffer(),
-                        meshData.indices().length, texture.getFileName());
-                recordTransferCommand(cmd, verticesBuffers);
-                recordTransferCommand(cmd, indicesBuffers);
-                texture.recordTextureTransition(cmd);
-            }
-
-            cmd.endRecording();
-            Fence fence = new Fence(device, true);
-            fence.reset();
-            queue.submit(stack.pointers(cmd.getVkCommandBuffer()), null, null, null, fence);
-            fence.fenceWait();
-            fence.cleanup();
-            cmd.cleanup();
-
-            for (int i = 0; i < numMeshes; i++) {
-                positionTransferBuffers[i].cleanup();
-                indicesTransferBuffers[i].cleanup();
-                textureCache.getTexture(meshes[i].getTextureId()).cleanupTmpBuffer();
-            }
+        int rows = positions.length / 3;
+        for (int row = 0; row < rows; row++) {
+            int startPos = row * 3;
+            int startTextCoord = row * 2;
+            data.put(positions[startPos]);
+            data.put(positions[startPos + 1]);
+            data.put(positions[startPos + 2]);
+            data.put(textCoords[startTextCoord]);
+            data.put(textCoords[startTextCoord + 1]);
         }
-
-        return meshes;
     }
 
-    private static void recordTransferCommand(CommandBuffer cmd, TransferBuffers transferBuffers) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            VkBufferCopy.Buffer copyRegion = VkBufferCopy.callocStack(1, stack)
-                    .srcOffset(0).dstOffset(0).size(transferBuffers.srcBuffer().getRequestedSize());
-            vkCmdCopyBuffer(cmd.getVkCommandBuffer(), transferBuffers.srcBuffer().getBuffer(),
-                    transferBuffers.dstBuffer().getBuffer(), copyRegion);
-        }
+    public void cleanup() {
+        arenaRange.release();
     }
 
-    public void cleanup() {
-        indicesBuffer.cleanup();
-        verticesBuffer.cleanup();
+    public int getFirstIndex() {
+        return firstIndex;
     }
 
     public String getId() {
         return id;
     }
 
-    public VulkanBuffer getIndicesBuffer() {
-        return indicesBuffer;
-    }
-
     public int getIndicesCount() {
         return indicesCount;
     }
@@ -166,10 +137,7 @@ public class VulkanMesh {
         return textureId;
     }
 
-    public VulkanBuffer getVerticesBuffer() {
-        return verticesBuffer;
-    }
-
-    private record TransferBuffers(VulkanBuffer srcBuffer, VulkanBuffer dstBuffer) {
+    public int getVertexOffset() {
+        return vertexOffset;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,32 @@
+package org.vulkanb.eng.scene;
+
+import org.apache.logging.log4j.*;
+import org.vulkanb.eng.EngineUtils;
+
+import java.util.concurrent.*;
+
+public class AsyncModelLoader {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final ExecutorService executor;
+
+    public AsyncModelLoader(int numThreads) {
+        LOGGER.debug("Creating async model loader with [{}] threads", numThreads);
+        // Each aiImportFile call uses its own importer, so imports can run concurrently as long as no global Assimp
+        // state (such as the default logger) is modified
+        executor = EngineUtils.createThreadPool("model-loader", numThreads);
+    }
+
+    public void cleanup() {
+        LOGGER.debug("Destroying async model loader");
+        executor.shutdownNow();
+    }
+
+    public CompletableFuture<MeshData[]> loadMeshes(String id, String modelPath, String texturesDir) {
+        return CompletableFuture.supplyAsync(() -> ModelLoader.loadMeshes(id, modelPath, texturesDir), executor);
+    }
+
+    public CompletableFuture<MeshData[]> loadMeshes(String id, String modelPath, String texturesDir, int flags) {
+        return CompletableFuture.supplyAsync(() -> ModelLoader.loadMeshes(id, modelPath, texturesDir, flags), executor);
+    }
+}
@@ -0,0 +1,58 @@
+package org.vulkanb.eng.scene;
+
+import org.apache.logging.log4j.*;
+import org.vulkanb.eng.EngineProperties;
+
+import java.util.concurrent.CompletableFuture;
+
+// Loads the same set of models with 1 to N loader threads and logs the wall time of each run. Loads go through the
+// mesh cache when meshCacheDir is set, unset it to measure Assimp imports
+public class AsyncModelLoaderBenchmark {
+
+    private static final int DEFAULT_NUM_MODELS = 50;
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private AsyncModelLoaderBenchmark() {
+        // Utility class
+    }
+
+    private static double loadAll(int numThreads, String modelPath, String texturesDir, int numModels) {
+        AsyncModelLoader asyncModelLoader = new AsyncModelLoader(numThreads);
+        try {
+            long start = System.nanoTime();
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[numModels];
+            for (int i = 0; i < numModels; i++) {
+                futures[i] = asyncModelLoader.loadMeshes("model-" + i, modelPath, texturesDir);
+            }
+            CompletableFuture.allOf(futures).join();
+            return (System.nanoTime() - start) / 1_000_000.0;
+        } finally {
+            asyncModelLoader.cleanup();
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            LOGGER.error("Usage: AsyncModelLoaderBenchmark <modelPath> <texturesDir> [numModels] [maxThreads]");
+            return;
+        }
+        String modelPath = args[0];
+        String texturesDir = args[1];
+        int numModels = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_NUM_MODELS;
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        LOGGER.info("Loading [{}] models, mesh cache [{}]", numModels,
+                EngineProperties.getInstance().getMeshCacheDir() != null ? "enabled" : "disabled");
+
+        // Warm up, this also fills the mesh cache if it is enabled, so all the runs measure the same path
+        loadAll(maxThreads, modelPath, texturesDir, numModels);
+        double baseMillis = 0;
+        for (int numThreads = 1; numThreads <= maxThreads; numThreads++) {
+            double millis = loadAll(numThreads, modelPath, texturesDir, numModels);
+            if (numThreads == 1) {
+                baseMillis = millis;
+            }
+            LOGGER.info("[{}] threads: [{}] ms, speedup [{}]", numThreads, String.format("%.1f", millis),
+                    String.format("%.2f", baseMillis / millis));
+        }
+    }
+}
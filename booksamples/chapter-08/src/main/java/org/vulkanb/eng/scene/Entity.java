@@ -2,14 +2,19 @@ package org.vulkanb.eng.scene;
 
 import org.joml.*;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class Entity {
 
+    // Incremented on every transform change of any entity, so a renderer can tell whether matrices need to be updated
+    private static final AtomicLong LATEST_VERSION = new AtomicLong();
     private String id;
     private String meshId;
     private Matrix4f modelMatrix;
     private Vector3f position;
     private Quaternionf rotation;
     private float scale;
+    private long version;
 
     public Entity(String id, String meshId, Vector3f position) {
         this.id = id;
@@ -21,6 +26,10 @@ public class Entity {
         updateModelMatrix();
     }
 
+    public static long getLatestVersion() {
+        return LATEST_VERSION.get();
+    }
+
     public String getId() {
         return id;
     }
@@ -45,6 +54,10 @@ public class Entity {
         return scale;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public final void setPosition(float x, float y, float z) {
         position.x = x;
         position.y = y;
@@ -59,5 +72,6 @@ public class Entity {
 
     public void updateModelMatrix() {
         modelMatrix.identity().translationRotateScale(position, rotation, scale);
+        version = LATEST_VERSION.incrementAndGet();
     }
 }
\ No newline at end of file
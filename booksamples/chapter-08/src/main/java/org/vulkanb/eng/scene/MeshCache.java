@@ -0,0 +1,276 @@
+package org.vulkanb.eng.scene;
+
+import org.apache.logging.log4j.*;
+import org.joml.Vector4f;
+import org.vulkanb.eng.EngineUtils;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+public class MeshCache {
+
+    private static final String CACHE_FILE_EXTENSION = ".meshcache";
+    private static final int KEY_LENGTH = 32;
+    private static final Logger LOGGER = LogManager.getLogger();
+    // "VKMC"
+    private static final int MAGIC = 0x564B4D43;
+    private static final int VERSION = 1;
+
+    private MeshCache() {
+        // Utility class
+    }
+
+    private static int align(int size) {
+        return (size + 3) & ~3;
+    }
+
+    private static byte[] computeKey(String modelPath, String texturesDir, int flags) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new RuntimeException(excp);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        Path model = Paths.get(modelPath);
+        digestFile(digest, model, buffer);
+        // Materials are stored in the cache, so the files that define them are part of the key. A missing file is
+        // hashed by name, so creating it later changes the key too
+        for (Path materialFile : getMaterialFiles(model)) {
+            digest.update(materialFile.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+            if (Files.exists(materialFile)) {
+                digestFile(digest, materialFile, buffer);
+            } else {
+                digest.update((byte) 0);
+            }
+        }
+        // Texture paths are resolved against the textures directory, so it is part of the cached content
+        digest.update(ByteBuffer.allocate(8).putInt(flags).putInt(VERSION).flip());
+        digest.update(texturesDir.getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+
+    private static void digestFile(MessageDigest digest, Path path, ByteBuffer buffer) throws IOException {
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (fc.read(buffer) > 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+    }
+
+    private static MeshData[] deserialize(ByteBuffer buffer, String id, byte[] key) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        byte[] storedKey = new byte[KEY_LENGTH];
+        buffer.get(storedKey);
+        if (!Arrays.equals(key, storedKey)) {
+            return null;
+        }
+
+        int numMaterials = readCount(buffer, 4 + 4 * Float.BYTES);
+        List<Material> materials = new ArrayList<>(numMaterials);
+        for (int i = 0; i < numMaterials; i++) {
+            String texturePath = readString(buffer);
+            Vector4f diffuse = new Vector4f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(),
+                    buffer.getFloat());
+            materials.add(new Material(texturePath, diffuse));
+        }
+
+        int numMeshes = readCount(buffer, 4 * 4);
+        MeshData[] meshesData = new MeshData[numMeshes];
+        for (int i = 0; i < numMeshes; i++) {
+            int materialIdx = buffer.getInt();
+            int numPositions = buffer.getInt();
+            int numTextCoords = buffer.getInt();
+            int numIndices = buffer.getInt();
+            // Lengths are checked before allocating, so a corrupted file cannot request huge arrays
+            if (numPositions < 0 || numTextCoords < 0 || numIndices < 0 ||
+                    (long) numPositions * Float.BYTES + (long) numTextCoords * Float.BYTES +
+                            (long) numIndices * Integer.BYTES > buffer.remaining()) {
+                throw new RuntimeException("Invalid mesh data lengths");
+            }
+            float[] positions = new float[numPositions];
+            float[] textCoords = new float[numTextCoords];
+            int[] indices = new int[numIndices];
+
+            buffer.asFloatBuffer().get(positions);
+            buffer.position(buffer.position() + positions.length * Float.BYTES);
+            buffer.asFloatBuffer().get(textCoords);
+            buffer.position(buffer.position() + textCoords.length * Float.BYTES);
+            buffer.asIntBuffer().get(indices);
+            buffer.position(buffer.position() + indices.length * Integer.BYTES);
+
+            Material material = materialIdx >= 0 ? materials.get(materialIdx) : new Material();
+            meshesData[i] = new MeshData(id, positions, textCoords, indices, material);
+        }
+        return meshesData;
+    }
+
+    public static CacheEntry getCacheEntry(String cacheDir, String modelPath, String texturesDir, int flags) {
+        CacheEntry result = null;
+        try {
+            byte[] key = computeKey(modelPath, texturesDir, flags);
+            result = new CacheEntry(Paths.get(cacheDir, toHex(key) + CACHE_FILE_EXTENSION), key);
+        } catch (IOException excp) {
+            LOGGER.warn("Could not compute mesh cache key for [{}]", modelPath, excp);
+        }
+        return result;
+    }
+
+    // Material libraries referenced by OBJ files, plus the library next to the model with the same name
+    private static Set<Path> getMaterialFiles(Path model) throws IOException {
+        Set<Path> result = new LinkedHashSet<>();
+        Path dir = model.toAbsolutePath().getParent();
+        String fileName = model.getFileName().toString();
+        int extPos = fileName.lastIndexOf('.');
+        String baseName = extPos > 0 ? fileName.substring(0, extPos) : fileName;
+        if (fileName.toLowerCase(Locale.ROOT).endsWith(".obj")) {
+            try (BufferedReader reader = Files.newBufferedReader(model, StandardCharsets.ISO_8859_1)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.startsWith("mtllib ") || line.startsWith("mtllib\t")) {
+                        for (String name : line.substring(6).trim().split("\\s+")) {
+                            result.add(dir.resolve(name).normalize());
+                        }
+                    }
+                }
+            }
+        }
+        result.add(dir.resolve(baseName + ".mtl"));
+        return result;
+    }
+
+    public static MeshData[] load(CacheEntry cacheEntry, String id) {
+        MeshData[] result = null;
+        Path cacheFile = cacheEntry.cacheFile();
+        if (Files.exists(cacheFile)) {
+            try (FileChannel fc = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                result = deserialize(buffer, id, cacheEntry.key());
+                if (result == null) {
+                    LOGGER.warn("Discarding mesh cache file [{}] with a wrong header", cacheFile);
+                }
+            } catch (IOException | RuntimeException excp) {
+                // Truncated or corrupted files end up here, just import the model again
+                LOGGER.warn("Could not read mesh cache file [{}]", cacheFile, excp);
+                result = null;
+            }
+        }
+        return result;
+    }
+
+    // Reads an element count, checking that the elements, of at least the given size, fit in the remaining data
+    private static int readCount(ByteBuffer buffer, int minElementSize) {
+        int count = buffer.getInt();
+        if (count < 0 || (long) count * minElementSize > buffer.remaining()) {
+            throw new RuntimeException("Invalid element count [" + count + "]");
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String result = null;
+        if (length > buffer.remaining()) {
+            throw new RuntimeException("Invalid string length [" + length + "]");
+        }
+        if (length >= 0) {
+            byte[] data = new byte[length];
+            buffer.get(data);
+            buffer.position(buffer.position() + align(length) - length);
+            result = new String(data, StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    private static ByteBuffer serialize(MeshData[] meshesData, byte[] key) {
+        List<Material> materials = new ArrayList<>();
+        Map<Material, Integer> materialsIdx = new IdentityHashMap<>();
+        for (MeshData meshData : meshesData) {
+            Material material = meshData.material();
+            if (material != null && !materialsIdx.containsKey(material)) {
+                materialsIdx.put(material, materials.size());
+                materials.add(material);
+            }
+        }
+
+        List<byte[]> texturePaths = new ArrayList<>();
+        int size = 4 + 4 + KEY_LENGTH + 4;
+        for (Material material : materials) {
+            String texturePath = material.getTexturePath();
+            byte[] data = texturePath != null ? texturePath.getBytes(StandardCharsets.UTF_8) : null;
+            texturePaths.add(data);
+            size += 4 + (data != null ? align(data.length) : 0) + 4 * Float.BYTES;
+        }
+        size += 4;
+        for (MeshData meshData : meshesData) {
+            size += 4 * 4 + (meshData.positions().length + meshData.textCoords().length) * Float.BYTES +
+                    meshData.indices().length * Integer.BYTES;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).put(key);
+        buffer.putInt(materials.size());
+        for (int i = 0; i < materials.size(); i++) {
+            byte[] data = texturePaths.get(i);
+            if (data != null) {
+                buffer.putInt(data.length).put(data);
+                buffer.position(buffer.position() + align(data.length) - data.length);
+            } else {
+                buffer.putInt(-1);
+            }
+            Vector4f diffuse = materials.get(i).getDiffuseColor();
+            buffer.putFloat(diffuse.x).putFloat(diffuse.y).putFloat(diffuse.z).putFloat(diffuse.w);
+        }
+
+        buffer.putInt(meshesData.length);
+        for (MeshData meshData : meshesData) {
+            Material material = meshData.material();
+            buffer.putInt(material != null ? materialsIdx.get(material) : -1);
+            buffer.putInt(meshData.positions().length);
+            buffer.putInt(meshData.textCoords().length);
+            buffer.putInt(meshData.indices().length);
+
+            buffer.asFloatBuffer().put(meshData.positions());
+            buffer.position(buffer.position() + meshData.positions().length * Float.BYTES);
+            buffer.asFloatBuffer().put(meshData.textCoords());
+            buffer.position(buffer.position() + meshData.textCoords().length * Float.BYTES);
+            buffer.asIntBuffer().put(meshData.indices());
+            buffer.position(buffer.position() + meshData.indices().length * Integer.BYTES);
+        }
+        return buffer.flip();
+    }
+
+    public static void store(CacheEntry cacheEntry, MeshData[] meshesData) {
+        Path cacheFile = cacheEntry.cacheFile();
+        try {
+            EngineUtils.writeAtomically(cacheFile, serialize(meshesData, cacheEntry.key()));
+            LOGGER.debug("Stored mesh cache file [{}]", cacheFile);
+        } catch (IOException excp) {
+            LOGGER.warn("Could not write mesh cache file [{}]", cacheFile, excp);
+        }
+    }
+
+    private static String toHex(byte[] data) {
+        StringBuilder sb = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public record CacheEntry(Path cacheFile, byte[]key) {
+    }
+}
@@ -0,0 +1,66 @@
+package org.vulkanb.eng.scene;
+
+import org.apache.logging.log4j.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Comparator;
+
+// Compares importing a model with Assimp against reading it back from the mesh cache, which includes hashing the
+// source files to compute the cache key. The cache is written to a temporary directory, deleted on exit
+public class MeshCacheBenchmark {
+
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private MeshCacheBenchmark() {
+        // Utility class
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            LOGGER.error("Usage: MeshCacheBenchmark <modelPath> <texturesDir> [iterations]");
+            return;
+        }
+        String modelPath = args[0];
+        String texturesDir = args[1];
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+        Path cacheDir = Files.createTempDirectory("meshcache");
+        try {
+            long start = System.nanoTime();
+            MeshData[] meshesData = null;
+            for (int i = 0; i < iterations; i++) {
+                meshesData = ModelLoader.importMeshes("benchmark", modelPath, texturesDir, ModelLoader.DEFAULT_FLAGS);
+            }
+            double importMillis = (System.nanoTime() - start) / 1_000_000.0 / iterations;
+
+            MeshCache.CacheEntry cacheEntry = MeshCache.getCacheEntry(cacheDir.toString(), modelPath, texturesDir,
+                    ModelLoader.DEFAULT_FLAGS);
+            if (cacheEntry == null) {
+                LOGGER.error("Could not compute cache key for [{}]", modelPath);
+                return;
+            }
+            MeshCache.store(cacheEntry, meshesData);
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                MeshCache.CacheEntry entry = MeshCache.getCacheEntry(cacheDir.toString(), modelPath, texturesDir,
+                        ModelLoader.DEFAULT_FLAGS);
+                if (entry == null || MeshCache.load(entry, "benchmark") == null) {
+                    LOGGER.error("Could not read mesh cache for [{}]", modelPath);
+                    return;
+                }
+            }
+            double cacheMillis = (System.nanoTime() - start) / 1_000_000.0 / iterations;
+
+            LOGGER.info("Model [{}], [{}] iterations", modelPath, iterations);
+            LOGGER.info("Assimp import: [{}] ms, cache read: [{}] ms, speedup [{}]",
+                    String.format("%.3f", importMillis), String.format("%.3f", cacheMillis),
+                    String.format("%.2f", importMillis / cacheMillis));
+        } finally {
+            try (var paths = Files.walk(cacheDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -4,32 +4,26 @@ import org.apache.logging.log4j.*;
 import org.joml.Vector4f;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.assimp.*;
-import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.*;
+import org.vulkanb.eng.EngineProperties;
 
 import java.io.File;
-import java.nio.IntBuffer;
+import java.nio.*;
 import java.util.*;
 
 import static org.lwjgl.assimp.Assimp.*;
-import static org.vulkanb.eng.EngineUtils.*;
 
 public class ModelLoader {
 
+    protected static final int DEFAULT_FLAGS = aiProcess_GenSmoothNormals | aiProcess_JoinIdenticalVertices |
+            aiProcess_Triangulate | aiProcess_FixInfacingNormals | aiProcess_CalcTangentSpace;
     private static final Logger LOGGER = LogManager.getLogger();
 
     private ModelLoader() {
         // Utility class
     }
 
-    public static MeshData[] loadMeshes(String id, String modelPath, String texturesDir, int flags) {
-        LOGGER.debug("Loading mesh data [{}]", modelPath);
-        if (!new File(modelPath).exists()) {
-            throw new RuntimeException("Model path does not exist [" + modelPath + "]");
-        }
-        if (!new File(texturesDir).exists()) {
-            throw new RuntimeException("Textures path does not exist [" + texturesDir + "]");
-        }
-
+    protected static MeshData[] importMeshes(String id, String modelPath, String texturesDir, int flags) {
         AIScene aiScene = aiImportFile(modelPath, flags);
         if (aiScene == null) {
             throw new RuntimeException("Error loading model [modelPath: " + modelPath + ", texturesDir:" + texturesDir + "]");
@@ -52,25 +46,56 @@ public class ModelLoader {
         }
 
         aiReleaseImport(aiScene);
+        return meshesData;
+    }
+
+    public static MeshData[] loadMeshes(String id, String modelPath, String texturesDir, int flags) {
+        LOGGER.debug("Loading mesh data [{}]", modelPath);
+        if (!new File(modelPath).exists()) {
+            throw new RuntimeException("Model path does not exist [" + modelPath + "]");
+        }
+        if (!new File(texturesDir).exists()) {
+            throw new RuntimeException("Textures path does not exist [" + texturesDir + "]");
+        }
+
+        String meshCacheDir = EngineProperties.getInstance().getMeshCacheDir();
+        MeshCache.CacheEntry cacheEntry = meshCacheDir != null ?
+                MeshCache.getCacheEntry(meshCacheDir, modelPath, texturesDir, flags) : null;
+        if (cacheEntry != null) {
+            MeshData[] meshesData = MeshCache.load(cacheEntry, id);
+            if (meshesData != null) {
+                LOGGER.debug("Loaded mesh data [{}] from cache", modelPath);
+                return meshesData;
+            }
+        }
+
+        MeshData[] meshesData = importMeshes(id, modelPath, texturesDir, flags);
+        if (cacheEntry != null) {
+            MeshCache.store(cacheEntry, meshesData);
+        }
         LOGGER.debug("Loaded mesh data [{}]", modelPath);
         return meshesData;
     }
 
     public static MeshData[] loadMeshes(String id, String modelPath, String texturesDir) {
-        return loadMeshes(id, modelPath, texturesDir, aiProcess_GenSmoothNormals | aiProcess_JoinIdenticalVertices |
-                aiProcess_Triangulate | aiProcess_FixInfacingNormals | aiProcess_CalcTangentSpace);
+        return loadMeshes(id, modelPath, texturesDir, DEFAULT_FLAGS);
     }
 
-    protected static List<Integer> processIndices(AIMesh aiMesh) {
-        List<Integer> indices = new ArrayList<>();
+    protected static int[] processIndices(AIMesh aiMesh) {
         int numFaces = aiMesh.mNumFaces();
         AIFace.Buffer aiFaces = aiMesh.mFaces();
+        int numIndices = 0;
         for (int i = 0; i < numFaces; i++) {
-            AIFace aiFace = aiFaces.get(i);
-            IntBuffer buffer = aiFace.mIndices();
-            while (buffer.remaining() > 0) {
-                indices.add(buffer.get());
-            }
+            numIndices += aiFaces.get(i).mNumIndices();
+        }
+
+        int[] indices = new int[numIndices];
+        int pos = 0;
+        for (int i = 0; i < numFaces; i++) {
+            IntBuffer buffer = aiFaces.get(i).mIndices();
+            int faceIndices = buffer.remaining();
+            buffer.get(indices, pos, faceIndices);
+            pos += faceIndices;
         }
         return indices;
     }
@@ -100,16 +125,13 @@ public class ModelLoader {
     }
 
     private static MeshData processMesh(String id, AIMesh aiMesh, List<Material> materials) {
-        List<Float> vertices = processVertices(aiMesh);
-        List<Float> textCoords = processTextCoords(aiMesh);
-        List<Integer> indices = processIndices(aiMesh);
+        float[] vertices = processVertices(aiMesh);
+        float[] textCoords = processTextCoords(aiMesh);
+        int[] indices = processIndices(aiMesh);
 
         // Texture coordinates may not have been populated. We need at least the empty slots
-        if (textCoords.isEmpty()) {
-            int numElements = (vertices.size() / 3) * 2;
-            for (int i = 0; i < numElements; i++) {
-                textCoords.add(0.0f);
-            }
+        if (textCoords.length == 0) {
+            textCoords = new float[(vertices.length / 3) * 2];
         }
 
         Material material;
@@ -119,31 +141,29 @@ public class ModelLoader {
         } else {
             material = new Material();
         }
-        return new MeshData(id, listToArray(vertices), listToArray(textCoords), listIntToArray(indices),
-                material);
+        return new MeshData(id, vertices, textCoords, indices, material);
     }
 
-    private static List<Float> processTextCoords(AIMesh aiMesh) {
-        List<Float> textCoords = new ArrayList<>();
+    protected static float[] processTextCoords(AIMesh aiMesh) {
         AIVector3D.Buffer aiTextCoords = aiMesh.mTextureCoords(0);
         int numTextCoords = aiTextCoords != null ? aiTextCoords.remaining() : 0;
-        for (int i = 0; i < numTextCoords; i++) {
-            AIVector3D textCoord = aiTextCoords.get();
-            textCoords.add(textCoord.x());
-            textCoords.add(1 - textCoord.y());
+        float[] textCoords = new float[numTextCoords * 2];
+        if (numTextCoords > 0) {
+            // Assimp stores three components per texture coordinate, read them straight from native memory
+            FloatBuffer data = MemoryUtil.memFloatBuffer(aiTextCoords.address(), numTextCoords * 3);
+            for (int i = 0; i < numTextCoords; i++) {
+                textCoords[i * 2] = data.get(i * 3);
+                textCoords[i * 2 + 1] = 1 - data.get(i * 3 + 1);
+            }
         }
         return textCoords;
     }
 
-    private static List<Float> processVertices(AIMesh aiMesh) {
-        List<Float> vertices = new ArrayList<>();
+    protected static float[] processVertices(AIMesh aiMesh) {
         AIVector3D.Buffer aiVertices = aiMesh.mVertices();
-        while (aiVertices.remaining() > 0) {
-            AIVector3D aiVertex = aiVertices.get();
-            vertices.add(aiVertex.x());
-            vertices.add(aiVertex.y());
-            vertices.add(aiVertex.z());
-        }
+        int numVertices = aiVertices.remaining();
+        float[] vertices = new float[numVertices * 3];
+        MemoryUtil.memFloatBuffer(aiVertices.address(), vertices.length).get(vertices);
         return vertices;
     }
 }
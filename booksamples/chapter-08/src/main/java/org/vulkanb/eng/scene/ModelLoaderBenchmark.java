@@ -0,0 +1,130 @@
+package org.vulkanb.eng.scene;
+
+import org.apache.logging.log4j.*;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.assimp.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.function.Function;
+
+import static org.lwjgl.assimp.Assimp.*;
+
+// Compares extracting the mesh data of an imported model through boxed lists, as it was done before, with the
+// primitive arrays read by ModelLoader. Logs the time and the bytes allocated by each, use a large OBJ model
+public class ModelLoaderBenchmark {
+
+    private static final int DEFAULT_ITERATIONS = 20;
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private ModelLoaderBenchmark() {
+        // Utility class
+    }
+
+    private static long extractArrays(AIMesh aiMesh) {
+        return ModelLoader.processVertices(aiMesh).length + ModelLoader.processTextCoords(aiMesh).length +
+                ModelLoader.processIndices(aiMesh).length;
+    }
+
+    private static long extractBoxed(AIMesh aiMesh) {
+        List<Float> vertices = new ArrayList<>();
+        AIVector3D.Buffer aiVertices = aiMesh.mVertices();
+        while (aiVertices.remaining() > 0) {
+            AIVector3D aiVertex = aiVertices.get();
+            vertices.add(aiVertex.x());
+            vertices.add(aiVertex.y());
+            vertices.add(aiVertex.z());
+        }
+
+        List<Float> textCoords = new ArrayList<>();
+        AIVector3D.Buffer aiTextCoords = aiMesh.mTextureCoords(0);
+        int numTextCoords = aiTextCoords != null ? aiTextCoords.remaining() : 0;
+        for (int i = 0; i < numTextCoords; i++) {
+            AIVector3D textCoord = aiTextCoords.get();
+            textCoords.add(textCoord.x());
+            textCoords.add(1 - textCoord.y());
+        }
+
+        List<Integer> indices = new ArrayList<>();
+        int numFaces = aiMesh.mNumFaces();
+        AIFace.Buffer aiFaces = aiMesh.mFaces();
+        for (int i = 0; i < numFaces; i++) {
+            IntBuffer buffer = aiFaces.get(i).mIndices();
+            while (buffer.remaining() > 0) {
+                indices.add(buffer.get());
+            }
+        }
+
+        float[] verticesArr = new float[vertices.size()];
+        for (int i = 0; i < verticesArr.length; i++) {
+            verticesArr[i] = vertices.get(i);
+        }
+        float[] textCoordsArr = new float[textCoords.size()];
+        for (int i = 0; i < textCoordsArr.length; i++) {
+            textCoordsArr[i] = textCoords.get(i);
+        }
+        int[] indicesArr = indices.stream().mapToInt((Integer v) -> v).toArray();
+        return verticesArr.length + textCoordsArr.length + indicesArr.length;
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            LOGGER.error("Usage: ModelLoaderBenchmark <modelPath> [iterations]");
+            return;
+        }
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        AIScene aiScene = aiImportFile(args[0], ModelLoader.DEFAULT_FLAGS);
+        if (aiScene == null) {
+            LOGGER.error("Error loading model [{}]", args[0]);
+            return;
+        }
+
+        try {
+            int numMeshes = aiScene.mNumMeshes();
+            PointerBuffer aiMeshes = aiScene.mMeshes();
+            List<AIMesh> meshes = new ArrayList<>(numMeshes);
+            for (int i = 0; i < numMeshes; i++) {
+                meshes.add(AIMesh.create(aiMeshes.get(i)));
+            }
+            LOGGER.info("Model [{}] has [{}] meshes, running [{}] iterations", args[0], numMeshes, iterations);
+
+            // Warm up both paths before measuring
+            measure(meshes, iterations, ModelLoaderBenchmark::extractBoxed);
+            measure(meshes, iterations, ModelLoaderBenchmark::extractArrays);
+            Result boxed = measure(meshes, iterations, ModelLoaderBenchmark::extractBoxed);
+            Result arrays = measure(meshes, iterations, ModelLoaderBenchmark::extractArrays);
+            LOGGER.info("Boxed lists: [{}] ms, [{}] bytes allocated per iteration",
+                    String.format("%.3f", boxed.millis()), boxed.bytes());
+            LOGGER.info("Primitive arrays: [{}] ms, [{}] bytes allocated per iteration",
+                    String.format("%.3f", arrays.millis()), arrays.bytes());
+            LOGGER.info("Speedup [{}], allocation ratio [{}]", String.format("%.2f", boxed.millis() / arrays.millis()),
+                    String.format("%.2f", (double) boxed.bytes() / Math.max(1, arrays.bytes())));
+        } finally {
+            aiReleaseImport(aiScene);
+        }
+    }
+
+    private static Result measure(List<AIMesh> meshes, int iterations, Function<AIMesh, Long> extractor) {
+        long total = 0;
+        long startBytes = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (AIMesh aiMesh : meshes) {
+                total += extractor.apply(aiMesh);
+            }
+        }
+        double millis = (System.nanoTime() - start) / 1_000_000.0 / iterations;
+        long bytes = (getAllocatedBytes() - startBytes) / iterations;
+        LOGGER.debug("Extracted [{}] elements", total);
+        return new Result(millis, bytes);
+    }
+
+    private record Result(double millis, long bytes) {
+    }
+}
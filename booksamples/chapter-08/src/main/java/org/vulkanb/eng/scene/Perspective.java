@@ -5,7 +5,7 @@ import org.joml.Matrix4f;
 public class Perspective {
 
     private static final float FOV = (float) Math.toRadians(60.0f);
-    private static final float Z_FAR = 100.f;
+    public static final float Z_FAR = 100.f;
     private static final float Z_NEAR = 0.01f;
 
     private Matrix4f perspectiveMatrix;
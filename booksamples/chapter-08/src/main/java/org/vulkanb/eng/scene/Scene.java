@@ -8,6 +8,8 @@ public class Scene {
 
     private Map<String, List<Entity>> entitiesMap;
     private Perspective perspective;
+    // Incremented when entities are added or removed
+    private long structureVersion;
 
     public Scene(Window window) {
         entitiesMap = new HashMap<>();
@@ -22,28 +24,38 @@ public class Scene {
             entitiesMap.put(entity.getMeshId(), entities);
         }
         entities.add(entity);
+        structureVersion++;
     }
 
+    // Entities can only be added or removed through the scene, so that the structure version is always updated
     public List<Entity> getEntitiesByMeshId(String meshId) {
-        return entitiesMap.get(meshId);
-    }
-
-    public Map<String, List<Entity>> getEntitiesMap() {
-        return entitiesMap;
+        List<Entity> entities = entitiesMap.get(meshId);
+        return entities != null ? Collections.unmodifiableList(entities) : null;
     }
 
     public Perspective getPerspective() {
         return perspective;
     }
 
+    public long getStructureVersion() {
+        return structureVersion;
+    }
+
+    public long getTransformsVersion() {
+        return Entity.getLatestVersion();
+    }
+
     public void removeAllEntities() {
         entitiesMap.clear();
+        structureVersion++;
     }
 
     public void removeEntity(Entity entity) {
         List<Entity> entities = entitiesMap.get(entity.getMeshId());
         if (entities != null) {
-            entities.removeIf(e -> e.getId().equals(entity.getId()));
+            if (entities.removeIf(e -> e.getId().equals(entity.getId()))) {
+                structureVersion++;
+            }
         }
     }
 }